@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import android.content.res.ColorStateList;
+import android.graphics.PorterDuff;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.GradientDrawable;
+import android.graphics.drawable.InsetDrawable;
+import android.graphics.drawable.RippleDrawable;
+import android.util.LongSparseArray;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Process-wide cache of partner-styled variants of button backgrounds, keyed by the source
+ * drawable's {@link Drawable.ConstantState} and the applied color and corner radius.
+ *
+ * <p>The first request for a variant mutates a single copy of the source and styles it; every
+ * later request, from any page, gets a cheap {@link Drawable.ConstantState#newDrawable()} of that
+ * styled state. The color is applied as a {@link Drawable#setTintList tint} rather than a color
+ * filter since only the tint is part of the constant state and survives {@code newDrawable()}.
+ */
+final class ButtonBackgroundCache {
+
+    /** Corner radius that leaves the radius of the source drawable untouched. */
+    static final float KEEP_RADIUS = Float.NaN;
+
+    // Weak keys so that states dropped by the resource cache, e.g. on a configuration change,
+    // don't keep their variants alive.
+    private static final Map<Drawable.ConstantState, LongSparseArray<Drawable.ConstantState>>
+            sVariants = new WeakHashMap<>();
+
+    /**
+     * Returns {@code source} tinted with {@code color} using {@link PorterDuff.Mode#SRC_ATOP} and
+     * with its inner {@link GradientDrawable} rounded to {@code cornerRadius}. A {@code color} of 0
+     * leaves the color untouched, as does {@link #KEEP_RADIUS} the radius. {@code source} itself
+     * is never modified; if nothing is to be applied, it is returned as is.
+     */
+    @NonNull
+    static Drawable getStyledBackground(
+            @NonNull Drawable source, @ColorInt int color, float cornerRadius) {
+        if (color == 0 && Float.isNaN(cornerRadius)) {
+            return source;
+        }
+
+        Drawable.ConstantState sourceState = source.getConstantState();
+        if (sourceState == null) {
+            // Can't be shared, style a private copy.
+            Drawable drawable = source.mutate();
+            style(drawable, color, cornerRadius);
+            return drawable;
+        }
+
+        long variantKey = ((long) color << 32)
+                | (Float.floatToIntBits(cornerRadius) & 0xffffffffL);
+        Drawable.ConstantState variantState;
+        synchronized (sVariants) {
+            LongSparseArray<Drawable.ConstantState> variants = sVariants.get(sourceState);
+            if (variants == null) {
+                variants = new LongSparseArray<>(1);
+                sVariants.put(sourceState, variants);
+            }
+            variantState = variants.get(variantKey);
+            if (variantState == null) {
+                Drawable drawable = sourceState.newDrawable().mutate();
+                style(drawable, color, cornerRadius);
+                variantState = drawable.getConstantState();
+                if (variantState == null) {
+                    return drawable;
+                }
+                variants.put(variantKey, variantState);
+            }
+        }
+        return variantState.newDrawable();
+    }
+
+    private static void style(Drawable drawable, @ColorInt int color, float cornerRadius) {
+        if (color != 0) {
+            drawable.setTintList(ColorStateList.valueOf(color));
+            drawable.setTintMode(PorterDuff.Mode.SRC_ATOP);
+        }
+        if (!Float.isNaN(cornerRadius)) {
+            GradientDrawable gradientDrawable = getGradientDrawable(drawable);
+            if (gradientDrawable != null) {
+                gradientDrawable.setCornerRadius(cornerRadius);
+            }
+        }
+    }
+
+    private static GradientDrawable getGradientDrawable(Drawable drawable) {
+        if (drawable instanceof GradientDrawable) {
+            return (GradientDrawable) drawable;
+        }
+
+        if (drawable instanceof InsetDrawable) {
+            return getGradientDrawableFromInsetDrawable((InsetDrawable) drawable);
+        }
+
+        if (drawable instanceof RippleDrawable) {
+            drawable = ((RippleDrawable) drawable).getDrawable(0);
+            if (drawable instanceof InsetDrawable) {
+                return getGradientDrawableFromInsetDrawable((InsetDrawable) drawable);
+            }
+            return (GradientDrawable) drawable;
+        }
+
+        return null;
+    }
+
+    private static GradientDrawable getGradientDrawableFromInsetDrawable(
+            InsetDrawable insetDrawable) {
+        return (GradientDrawable) insetDrawable.getDrawable();
+    }
+
+    private ButtonBackgroundCache() {
+    }
+}
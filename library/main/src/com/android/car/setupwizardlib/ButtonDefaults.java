@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import android.animation.AnimatorInflater;
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.graphics.drawable.Drawable;
+import android.widget.Button;
+
+import androidx.annotation.AttrRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The theme defaults of a button style that differ between raised and flat buttons, read once so
+ * that a button can be switched between the two in place, without inflating a new one.
+ */
+final class ButtonDefaults {
+
+    private static final int[] ATTRS = {
+            android.R.attr.background,
+            android.R.attr.textColor,
+            android.R.attr.stateListAnimator,
+    };
+
+    private final Context mContext;
+    @Nullable private final Drawable.ConstantState mBackground;
+    @Nullable private final ColorStateList mTextColor;
+    private final int mStateListAnimatorRes;
+
+    private ButtonDefaults(Context context, @Nullable Drawable.ConstantState background,
+            @Nullable ColorStateList textColor, int stateListAnimatorRes) {
+        mContext = context;
+        mBackground = background;
+        mTextColor = textColor;
+        mStateListAnimatorRes = stateListAnimatorRes;
+    }
+
+    /**
+     * Reads the defaults of the button style the theme of {@code context} sets as {@code
+     * defStyleAttr}, e.g. {@code android.R.attr.borderlessButtonStyle}.
+     */
+    @NonNull
+    static ButtonDefaults obtain(@NonNull Context context, @AttrRes int defStyleAttr) {
+        TypedArray attrs = context.obtainStyledAttributes(null, ATTRS, defStyleAttr, 0);
+        try {
+            Drawable background = attrs.getDrawable(0);
+            return new ButtonDefaults(
+                    context,
+                    background == null ? null : background.getConstantState(),
+                    attrs.getColorStateList(1),
+                    attrs.getResourceId(2, 0));
+        } finally {
+            attrs.recycle();
+        }
+    }
+
+    /**
+     * Resets the background, text color and state list animator of {@code button} to these
+     * defaults. Partner styling should be applied again afterwards.
+     */
+    void apply(@NonNull Button button) {
+        button.setBackground(mBackground == null
+                ? null
+                : mBackground.newDrawable(button.getResources()));
+        if (mTextColor != null) {
+            button.setTextColor(mTextColor);
+        }
+        button.setStateListAnimator(mStateListAnimatorRes == 0
+                ? null
+                : AnimatorInflater.loadStateListAnimator(mContext, mStateListAnimatorRes));
+    }
+}
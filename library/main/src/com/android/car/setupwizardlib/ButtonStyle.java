@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.ViewGroup.MarginLayoutParams;
+import android.widget.Button;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.setupwizardlib.partner.PartnerConfig;
+import com.android.car.setupwizardlib.partner.PartnerConfigSnapshot;
+import com.android.car.setupwizardlib.util.TypefaceCache;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The partner styling of a toolbar button variant, resolved once from a {@link
+ * PartnerConfigSnapshot} and applied to a button in a single call.
+ *
+ * <p>Snapshots are shared per configuration, so styles are cached per snapshot: every page of the
+ * process built under the same configuration reuses the same instances.
+ */
+final class ButtonStyle {
+
+    private static final String TAG = ButtonStyle.class.getSimpleName();
+
+    /** The toolbar button variants. */
+    enum Variant {
+        /** The raised primary button. */
+        PRIMARY,
+        /** The primary button switched to flat; it keeps the background of its layout. */
+        FLAT,
+        /** The secondary button. */
+        SECONDARY,
+    }
+
+    // Weak keys so that styles of snapshots replaced by a partner config change are dropped.
+    private static final Map<PartnerConfigSnapshot, ButtonStyle[]> sStyles = new WeakHashMap<>();
+
+    private final boolean mStyleBackground;
+    /** The partner background, or {@code null} to style the background of the button's layout. */
+    @Nullable private final Drawable.ConstantState mBackground;
+    @ColorInt private final int mBackgroundColor;
+    private final float mCornerRadius;
+    private final int mHorizontalPadding;
+    private final int mVerticalPadding;
+    @Nullable private final String mFontFamily;
+    private final float mTextSize;
+    @ColorInt private final int mTextColor;
+    private final boolean mSetMarginEnd;
+    private final int mMarginEnd;
+
+    private ButtonStyle(PartnerConfigSnapshot snapshot, Variant variant) {
+        mStyleBackground = variant != Variant.FLAT;
+        PartnerConfig backgroundConfig = variant == Variant.SECONDARY
+                ? PartnerConfig.CONFIG_TOOLBAR_SECONDARY_BUTTON_BG
+                : PartnerConfig.CONFIG_TOOLBAR_PRIMARY_BUTTON_BG;
+        Drawable background = mStyleBackground ? snapshot.getDrawable(backgroundConfig) : null;
+        mBackground = background == null ? null : background.getConstantState();
+        mBackgroundColor = snapshot.getColor(variant == Variant.SECONDARY
+                ? PartnerConfig.CONFIG_TOOLBAR_SECONDARY_BUTTON_BG_COLOR
+                : PartnerConfig.CONFIG_TOOLBAR_PRIMARY_BUTTON_BG_COLOR);
+        mCornerRadius = snapshot.getDimension(PartnerConfig.CONFIG_TOOLBAR_BUTTON_RADIUS);
+
+        mHorizontalPadding = Math.round(
+                snapshot.getDimension(PartnerConfig.CONFIG_TOOLBAR_BUTTON_PADDING_HORIZONTAL));
+        mVerticalPadding = Math.round(
+                snapshot.getDimension(PartnerConfig.CONFIG_TOOLBAR_BUTTON_PADDING_VERTICAL));
+        mFontFamily = snapshot.getString(PartnerConfig.CONFIG_TOOLBAR_BUTTON_FONT_FAMILY);
+        mTextSize = snapshot.getDimension(PartnerConfig.CONFIG_TOOLBAR_BUTTON_TEXT_SIZE);
+        // A flat primary button looks like a secondary button.
+        mTextColor = snapshot.getColor(variant == Variant.PRIMARY
+                ? PartnerConfig.CONFIG_TOOLBAR_PRIMARY_BUTTON_TEXT_COLOR
+                : PartnerConfig.CONFIG_TOOLBAR_SECONDARY_BUTTON_TEXT_COLOR);
+
+        mSetMarginEnd = variant == Variant.SECONDARY;
+        mMarginEnd = Math.round(
+                snapshot.getDimension(PartnerConfig.CONFIG_TOOLBAR_BUTTON_SPACING));
+    }
+
+    /** Returns the style of the given {@code variant} under the given partner configuration. */
+    @NonNull
+    static ButtonStyle get(@NonNull PartnerConfigSnapshot snapshot, @NonNull Variant variant) {
+        synchronized (sStyles) {
+            ButtonStyle[] styles = sStyles.get(snapshot);
+            if (styles == null) {
+                styles = new ButtonStyle[Variant.values().length];
+                sStyles.put(snapshot, styles);
+            }
+            ButtonStyle style = styles[variant.ordinal()];
+            if (style == null) {
+                style = new ButtonStyle(snapshot, variant);
+                styles[variant.ordinal()] = style;
+            }
+            return style;
+        }
+    }
+
+    /**
+     * Applies this style to {@code button}. Apply it before the button is first laid out, so the
+     * changes cost a single layout pass.
+     */
+    void apply(@NonNull Button button) {
+        applyAttributes(button);
+        applyLayoutParams(button);
+    }
+
+    /**
+     * Applies the part of this style that doesn't depend on the layout params of {@code button},
+     * so that it can be applied while the button is inflated, before it gets any.
+     */
+    void applyAttributes(@NonNull Button button) {
+        button.setTag(R.id.button_style, this);
+
+        if (mStyleBackground) {
+            if (mBackground != null) {
+                button.setBackground(mBackground.newDrawable(button.getResources()));
+            } else if (button.getBackground() != null) {
+                // Background color and radius are only applied if the partner doesn't provide a
+                // background, which would otherwise be overridden.
+                button.setBackground(ButtonBackgroundCache.getStyledBackground(
+                        button.getBackground(), mBackgroundColor, mCornerRadius));
+            }
+        }
+
+        // Set after the background, which may bring its own padding.
+        button.setPadding(mHorizontalPadding, mVerticalPadding, mHorizontalPadding,
+                mVerticalPadding);
+        if (mTextSize != 0) {
+            button.setTextSize(TypedValue.COMPLEX_UNIT_PX, mTextSize);
+        }
+        if (mTextColor != 0) {
+            button.setTextColor(mTextColor);
+        }
+        applyTypeface(button);
+    }
+
+    /** Applies the part of this style that sets the layout params of {@code button}. */
+    void applyLayoutParams(@NonNull Button button) {
+        if (mSetMarginEnd && button.getLayoutParams() instanceof MarginLayoutParams) {
+            ((MarginLayoutParams) button.getLayoutParams()).setMarginEnd(mMarginEnd);
+        }
+    }
+
+    private void applyTypeface(Button button) {
+        if (TextUtils.isEmpty(mFontFamily)) {
+            return;
+        }
+        TypefaceCache.getAsync(mFontFamily, Typeface.NORMAL, typeface -> {
+            // Skip if the button was restyled while the typeface was loading.
+            if (button.getTag(R.id.button_style) != this) {
+                return;
+            }
+            if (typeface.equals(Typeface.DEFAULT)) {
+                Log.w(TAG, String.format(
+                        "Couldn't find font: %s. Setting default font.", mFontFamily));
+            }
+            button.setTypeface(typeface);
+        });
+    }
+}
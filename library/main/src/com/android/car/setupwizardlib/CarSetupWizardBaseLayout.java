@@ -16,23 +16,18 @@
 
 package com.android.car.setupwizardlib;
 
-import android.animation.ValueAnimator;
 import android.annotation.Nullable;
 import android.content.Context;
 import android.content.res.TypedArray;
-import android.graphics.PorterDuff;
-import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
-import android.graphics.drawable.GradientDrawable;
-import android.graphics.drawable.InsetDrawable;
-import android.graphics.drawable.RippleDrawable;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.TextUtils;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.util.TypedValue;
-import android.view.LayoutInflater;
-import android.view.TouchDelegate;
+import android.view.Choreographer;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewStub;
@@ -42,14 +37,21 @@ import android.widget.LinearLayout;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
+import androidx.annotation.AnyThread;
 import androidx.annotation.StyleRes;
 import androidx.annotation.VisibleForTesting;
 
 import com.android.car.setupwizardlib.partner.PartnerConfig;
 import com.android.car.setupwizardlib.partner.PartnerConfigHelper;
+import com.android.car.setupwizardlib.partner.PartnerConfigSnapshot;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Locale;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Custom layout for the Car Setup Wizard. Provides accessors for modifying elements such as buttons
@@ -59,13 +61,55 @@ import java.util.Objects;
  */
 class CarSetupWizardBaseLayout extends LinearLayout {
     private static final String TAG = CarSetupWizardBaseLayout.class.getSimpleName();
-    private static final int ANIMATION_DURATION_MS = 100;
+    private static final int NO_PENDING_PROGRESS = Integer.MIN_VALUE;
+
+    /** Every partner config, for restyling the whole layout. */
+    static final Set<PartnerConfig> ALL_PARTNER_CONFIGS =
+            Collections.unmodifiableSet(EnumSet.allOf(PartnerConfig.class));
+
+    /**
+     * Partner configs not applied by {@link PartnerStyledInflater} while the layout is inflated,
+     * which are left to {@link #applyPartnerConfig} once it is.
+     */
+    private static final Set<PartnerConfig> POST_INFLATION_CONFIGS = Collections.unmodifiableSet(
+            EnumSet.of(
+                    PartnerConfig.CONFIG_IS_IMMERSIVE,
+                    PartnerConfig.CONFIG_LOADING_INDICATOR_COLOR,
+                    PartnerConfig.CONFIG_LAYOUT_BG_COLOR));
+
+    /** Partner configs read when styling the primary toolbar button, raised or flat. */
+    private static final Set<PartnerConfig> PRIMARY_BUTTON_CONFIGS = EnumSet.of(
+            PartnerConfig.CONFIG_TOOLBAR_BUTTON_FONT_FAMILY,
+            PartnerConfig.CONFIG_TOOLBAR_BUTTON_PADDING_HORIZONTAL,
+            PartnerConfig.CONFIG_TOOLBAR_BUTTON_PADDING_VERTICAL,
+            PartnerConfig.CONFIG_TOOLBAR_BUTTON_RADIUS,
+            PartnerConfig.CONFIG_TOOLBAR_BUTTON_TEXT_SIZE,
+            PartnerConfig.CONFIG_TOOLBAR_PRIMARY_BUTTON_BG,
+            PartnerConfig.CONFIG_TOOLBAR_PRIMARY_BUTTON_BG_COLOR,
+            PartnerConfig.CONFIG_TOOLBAR_PRIMARY_BUTTON_TEXT_COLOR,
+            PartnerConfig.CONFIG_TOOLBAR_SECONDARY_BUTTON_TEXT_COLOR);
+
+    /** Partner configs read when styling the secondary toolbar button. */
+    private static final Set<PartnerConfig> SECONDARY_BUTTON_CONFIGS = EnumSet.of(
+            PartnerConfig.CONFIG_TOOLBAR_BUTTON_FONT_FAMILY,
+            PartnerConfig.CONFIG_TOOLBAR_BUTTON_PADDING_HORIZONTAL,
+            PartnerConfig.CONFIG_TOOLBAR_BUTTON_PADDING_VERTICAL,
+            PartnerConfig.CONFIG_TOOLBAR_BUTTON_RADIUS,
+            PartnerConfig.CONFIG_TOOLBAR_BUTTON_SPACING,
+            PartnerConfig.CONFIG_TOOLBAR_BUTTON_TEXT_SIZE,
+            PartnerConfig.CONFIG_TOOLBAR_SECONDARY_BUTTON_BG,
+            PartnerConfig.CONFIG_TOOLBAR_SECONDARY_BUTTON_BG_COLOR,
+            PartnerConfig.CONFIG_TOOLBAR_SECONDARY_BUTTON_TEXT_COLOR);
 
     private View mBackButton;
+    private ExpandedTouchDelegate mBackButtonTouchDelegate;
     private View mTitleBar;
-    private Float mTitleBarElevation;
+    private TitleBarElevationController mTitleBarElevationController;
     private TextView mToolbarTitle;
     private PartnerConfigHelper mPartnerConfigHelper;
+    private PartnerConfigSnapshot mPartnerConfigSnapshot;
+    private final PartnerConfigHelper.OnPartnerConfigChangedListener mPartnerConfigListener =
+            this::onPartnerConfigChanged;
 
     /* <p>The Primary Toolbar Button should always be used when there is only a single action that
      * moves the wizard to the next screen (e.g. Only need a 'Skip' button).
@@ -80,10 +124,52 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * Flag to track the primary toolbar button flat state.
      */
     private boolean mPrimaryToolbarButtonFlat;
-    private View.OnClickListener mPrimaryToolbarButtonOnClick;
+    /** Whether the toolbar is built in code rather than inflated. */
+    private boolean mBuildToolbarInCode;
+    /** Theme defaults of raised and flat buttons, read on the first switch between the two. */
+    private ButtonDefaults mRaisedButtonDefaults;
+    private ButtonDefaults mFlatButtonDefaults;
     private Button mSecondaryToolbarButton;
     private ProgressBar mProgressBar;
 
+    /** The toolbar properties a batch of updates can record. */
+    private enum ToolbarProperty {
+        BACK_BUTTON_VISIBLE,
+        TITLE_VISIBLE,
+        TITLE_TEXT,
+        PRIMARY_BUTTON_VISIBLE,
+        PRIMARY_BUTTON_ENABLED,
+        PRIMARY_BUTTON_TEXT,
+        // The secondary button is inflated by its first update, hidden, so its text goes first.
+        SECONDARY_BUTTON_TEXT,
+        SECONDARY_BUTTON_ENABLED,
+        SECONDARY_BUTTON_VISIBLE,
+        PROGRESS_BAR_VISIBLE,
+        PROGRESS_BAR_INDETERMINATE,
+        PROGRESS_BAR_PROGRESS,
+    }
+
+    /** Progress posted by {@link #postProgressBarProgress} and not applied yet, if any. */
+    private final AtomicInteger mPendingProgress = new AtomicInteger(NO_PENDING_PROGRESS);
+    /** Posts to the main thread whether or not the layout is attached, unlike {@link #post}. */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Choreographer.FrameCallback mApplyPendingProgress =
+            frameTimeNanos -> applyPendingProgress();
+    /** Run on the main thread, whose {@link Choreographer} then applies the progress. */
+    private final Runnable mScheduleProgressFrame =
+            () -> Choreographer.getInstance().postFrameCallback(mApplyPendingProgress);
+
+    /** Work left out of the first frame, run before the layout handles any input. */
+    private final IdleWorkScheduler mIdleWork = new IdleWorkScheduler(this);
+    private final Runnable mWarmUpSecondaryToolbarButton = this::maybeInflateSecondaryToolbarButton;
+    private final Runnable mInstallBackButtonTouchDelegate = this::installBackButtonTouchDelegate;
+
+    /** Depth of nested {@link #beginUpdate} calls. */
+    private int mUpdateDepth;
+    /** The last value requested for each property during the open batch. */
+    private final Map<ToolbarProperty, Object> mPendingUpdates =
+            new EnumMap<>(ToolbarProperty.class);
+
     CarSetupWizardBaseLayout(Context context) {
         this(context, null);
     }
@@ -106,6 +192,9 @@ class CarSetupWizardBaseLayout extends LinearLayout {
         super(context, attrs, defStyleAttr, defStyleRes);
 
         mPartnerConfigHelper = PartnerConfigHelper.get(context);
+        mPartnerConfigHelper.awaitPartnerConfig(
+                context.getResources().getInteger(R.integer.partner_config_timeout_ms));
+        mPartnerConfigSnapshot = mPartnerConfigHelper.getSnapshot(context);
         TypedArray attrArray = context.getTheme().obtainStyledAttributes(
                 attrs,
                 R.styleable.CarSetupWizardBaseLayout,
@@ -134,6 +223,8 @@ class CarSetupWizardBaseLayout extends LinearLayout {
         boolean showProgressBar;
         boolean indeterminateProgressBar;
 
+        boolean flattenToolbar;
+
         try {
             showBackButton = attrArray.getBoolean(
                     R.styleable.CarSetupWizardBaseLayout_showBackButton, true);
@@ -159,31 +250,34 @@ class CarSetupWizardBaseLayout extends LinearLayout {
                     R.styleable.CarSetupWizardBaseLayout_showProgressBar, false);
             indeterminateProgressBar = attrArray.getBoolean(
                     R.styleable.CarSetupWizardBaseLayout_indeterminateProgressBar, true);
+            flattenToolbar = attrArray.getBoolean(
+                    R.styleable.CarSetupWizardBaseLayout_flattenToolbar, false);
+            mBuildToolbarInCode = attrArray.getBoolean(
+                    R.styleable.CarSetupWizardBaseLayout_buildToolbarInCode, false);
         } finally {
             attrArray.recycle();
         }
 
-        LayoutInflater inflater = LayoutInflater.from(getContext());
-        inflater.inflate(R.layout.car_setup_wizard_layout, this);
+        if (mBuildToolbarInCode) {
+            addView(new CarSetupWizardToolbarBuilder(getContext(), mPartnerConfigSnapshot)
+                    .buildToolbar());
+        } else {
+            // Inflate the toolbar with the partner styling applied as its views are created.
+            PartnerStyledInflater.create(getContext(), mPartnerConfigSnapshot, null).inflate(
+                    flattenToolbar
+                            ? R.layout.car_setup_wizard_flat_toolbar
+                            : R.layout.car_setup_wizard_layout,
+                    this);
+        }
 
         // Set the back button visibility based on the custom attribute.
         setBackButton(findViewById(R.id.back_button));
-        Drawable drawable = mPartnerConfigHelper.getDrawable(
-                getContext(), PartnerConfig.CONFIG_TOOLBAR_BUTTON_ICON_BACK);
-        if (drawable != null) {
-            ((ImageView) mBackButton).setImageDrawable(drawable);
-        }
         setBackButtonVisible(showBackButton);
 
         // Se the title bar.
         setTitleBar(findViewById(R.id.application_bar));
-        mTitleBarElevation =
-                getContext().getResources().getDimension(R.dimen.title_bar_drop_shadow_elevation);
-        int toolbarBgColor =
-                mPartnerConfigHelper.getColor(getContext(), PartnerConfig.CONFIG_TOOLBAR_BG_COLOR);
-        if (toolbarBgColor != 0) {
-            mTitleBar.setBackgroundColor(toolbarBgColor);
-        }
+        mTitleBarElevationController = new TitleBarElevationController(mTitleBar,
+                getContext().getResources().getDimension(R.dimen.title_bar_drop_shadow_elevation));
 
         // Set the toolbar title visibility and text based on the custom attributes.
         setToolbarTitle(findViewById(R.id.toolbar_title));
@@ -194,31 +288,23 @@ class CarSetupWizardBaseLayout extends LinearLayout {
         }
 
         // Set the primary continue button visibility and text based on the custom attributes.
-        ViewStub primaryToolbarButtonStub =
-                (ViewStub) findViewById(R.id.primary_toolbar_button_stub);
-        // Set the button layout to flat if that attribute was set.
-        if (mPrimaryToolbarButtonFlat) {
-            primaryToolbarButtonStub.setLayoutResource(R.layout.flat_button);
-        }
-        primaryToolbarButtonStub.inflate();
-        setPrimaryToolbarButton(findViewById(R.id.primary_toolbar_button));
+        setPrimaryToolbarButton(addToolbarButton(getPrimaryToolbarButtonVariant()));
         if (showPrimaryToolbarButton) {
             setPrimaryToolbarButtonText(primaryToolbarButtonText);
             setPrimaryToolbarButtonEnabled(primaryToolbarButtonEnabled);
-            stylePrimaryToolbarButton(mPrimaryToolbarButton);
         } else {
             setPrimaryToolbarButtonVisible(false);
         }
 
         // Set the secondary continue button visibility and text based on the custom attributes.
-        ViewStub secondaryToolbarButtonStub =
-                (ViewStub) findViewById(R.id.secondary_toolbar_button_stub);
         if (showSecondaryToolbarButton || !TextUtils.isEmpty(secondaryToolbarButtonText)) {
-            secondaryToolbarButtonStub.inflate();
-            mSecondaryToolbarButton = findViewById(R.id.secondary_toolbar_button);
+            mSecondaryToolbarButton = addToolbarButton(ButtonStyle.Variant.SECONDARY);
             setSecondaryToolbarButtonText(secondaryToolbarButtonText);
             setSecondaryToolbarButtonEnabled(secondaryToolbarButtonEnabled);
             setSecondaryToolbarButtonVisible(showSecondaryToolbarButton);
+        } else {
+            // Not in the first frame, but inflate and style it before it can be asked for.
+            mIdleWork.schedule(mWarmUpSecondaryToolbarButton);
         }
 
         mProgressBar = findViewById(R.id.progress_bar);
@@ -227,6 +313,100 @@ class CarSetupWizardBaseLayout extends LinearLayout {
 
         // Set orientation programmatically since the inflated layout uses <merge>
         setOrientation(LinearLayout.VERTICAL);
+
+        applyPartnerConfig(POST_INFLATION_CONFIGS);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mPartnerConfigHelper.addOnPartnerConfigChangedListener(mPartnerConfigListener);
+        // The partner config may have arrived while this layout was detached.
+        maybeReapplyPartnerConfig();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        mPartnerConfigHelper.removeOnPartnerConfigChangedListener(mPartnerConfigListener);
+        // Apply the posted progress now rather than keep the layout in the main thread's queue.
+        mMainHandler.removeCallbacks(mScheduleProgressFrame);
+        Choreographer.getInstance().removeFrameCallback(mApplyPendingProgress);
+        applyPendingProgress();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        // Deferred work, like the back button touch delegate, must be done before input.
+        mIdleWork.runPendingTasks();
+        return super.dispatchTouchEvent(event);
+    }
+
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        mIdleWork.runPendingTasks();
+        return super.dispatchKeyEvent(event);
+    }
+
+    /**
+     * Restyles the views that depend on any of the {@code changedConfigs} with the current partner
+     * configuration. Subclasses that apply extra partner resources should override this and call
+     * through to super.
+     */
+    void applyPartnerConfig(Set<PartnerConfig> changedConfigs) {
+        if (changedConfigs.contains(PartnerConfig.CONFIG_TOOLBAR_BUTTON_ICON_BACK)) {
+            Drawable drawable = mPartnerConfigSnapshot.getDrawable(
+                    PartnerConfig.CONFIG_TOOLBAR_BUTTON_ICON_BACK);
+            if (drawable != null) {
+                ((ImageView) mBackButton).setImageDrawable(drawable);
+            } else {
+                // The partner removed its icon, go back to the library's.
+                ((ImageView) mBackButton).setImageResource(R.drawable.car_ic_arrow_back);
+            }
+        }
+
+        if (changedConfigs.contains(PartnerConfig.CONFIG_TOOLBAR_BG_COLOR)) {
+            int toolbarBgColor =
+                    mPartnerConfigSnapshot.getColor(PartnerConfig.CONFIG_TOOLBAR_BG_COLOR);
+            if (toolbarBgColor != 0) {
+                mTitleBar.setBackgroundColor(toolbarBgColor);
+            } else {
+                // The toolbar layouts default to the window background.
+                TypedArray attrs = getContext().obtainStyledAttributes(
+                        new int[] {android.R.attr.windowBackground});
+                try {
+                    mTitleBar.setBackground(attrs.getDrawable(0));
+                } finally {
+                    attrs.recycle();
+                }
+            }
+        }
+
+        if (!Collections.disjoint(changedConfigs, PRIMARY_BUTTON_CONFIGS)) {
+            stylePrimaryToolbarButton(mPrimaryToolbarButton);
+        }
+        if (mSecondaryToolbarButton != null
+                && !Collections.disjoint(changedConfigs, SECONDARY_BUTTON_CONFIGS)) {
+            styleSecondaryToolbarButton();
+        }
+    }
+
+    /** Restyles only the views affected by a partner configuration change pushed at runtime. */
+    private void onPartnerConfigChanged(Set<PartnerConfig> changedConfigs) {
+        mPartnerConfigSnapshot = mPartnerConfigHelper.getSnapshot(getContext());
+        applyPartnerConfig(changedConfigs);
+    }
+
+    /**
+     * Restyles the layout if the partner configuration changed while it was detached, e.g.
+     * because it arrived after the {@link PartnerConfigHelper#awaitPartnerConfig} deadline.
+     */
+    private void maybeReapplyPartnerConfig() {
+        PartnerConfigSnapshot snapshot = mPartnerConfigHelper.getSnapshot(getContext());
+        if (snapshot != mPartnerConfigSnapshot) {
+            mPartnerConfigSnapshot = snapshot;
+            applyPartnerConfig(ALL_PARTNER_CONFIGS);
+        }
     }
 
     /**
@@ -237,46 +417,36 @@ class CarSetupWizardBaseLayout extends LinearLayout {
         view.setVisibility(visible ? View.VISIBLE : View.GONE);
     }
 
-    // Add or remove the back button touch delegate depending on whether it is visible.
+    /**
+     * Grows the touch target of the back button to {@code car_touch_target_size} while it is
+     * visible. The delegate follows the layout of the back button by itself, so it is only created
+     * once per back button, when the layout is idle or about to handle input.
+     */
     @VisibleForTesting
     void updateBackButtonTouchDelegate(boolean visible) {
+        // The delegate ignores touches while the back button is hidden.
         if (visible) {
-            // Post this action in the parent's message queue to make sure the parent
-            // lays out its children before getHitRect() is called
-            this.post(() -> {
-                Rect delegateArea = new Rect();
-
-                mBackButton.getHitRect(delegateArea);
-
-                /*
-                 * Update the delegate area based on the difference between the current size and
-                 * the touch target size
-                 */
-                float touchTargetSize = getResources().getDimension(
-                        R.dimen.car_touch_target_size);
-                float primaryIconSize = getResources().getDimension(
-                        R.dimen.car_primary_icon_size);
-
-                int sizeDifference = (int) ((touchTargetSize - primaryIconSize) / 2);
-
-                delegateArea.right += sizeDifference;
-                delegateArea.bottom += sizeDifference;
-                delegateArea.left -= sizeDifference;
-                delegateArea.top -= sizeDifference;
-
-                // Set the TouchDelegate on the parent view
-                TouchDelegate touchDelegate = new TouchDelegate(delegateArea,
-                        mBackButton);
-
-                if (View.class.isInstance(mBackButton.getParent())) {
-                    ((View) mBackButton.getParent()).setTouchDelegate(touchDelegate);
-                }
-            });
-        } else {
-            // Set the TouchDelegate to null if the back button is not visible.
-            if (View.class.isInstance(mBackButton.getParent())) {
-                ((View) mBackButton.getParent()).setTouchDelegate(null);
+            mIdleWork.schedule(mInstallBackButtonTouchDelegate);
+        }
+    }
+
+    private void installBackButtonTouchDelegate() {
+        if (!(mBackButton.getParent() instanceof View)) {
+            return;
+        }
+        if (mBackButtonTouchDelegate == null
+                || mBackButtonTouchDelegate.getDelegateView() != mBackButton) {
+            if (mBackButtonTouchDelegate != null) {
+                mBackButtonTouchDelegate.release();
             }
+            float touchTargetSize = getResources().getDimension(R.dimen.car_touch_target_size);
+            float primaryIconSize = getResources().getDimension(R.dimen.car_primary_icon_size);
+            mBackButtonTouchDelegate = new ExpandedTouchDelegate(
+                    mBackButton, (int) ((touchTargetSize - primaryIconSize) / 2));
+        }
+        View parent = (View) mBackButton.getParent();
+        if (parent.getTouchDelegate() != mBackButtonTouchDelegate) {
+            parent.setTouchDelegate(mBackButtonTouchDelegate);
         }
     }
 
@@ -304,6 +474,9 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * Set the back button visibility to the given visibility.
      */
     public void setBackButtonVisible(boolean visible) {
+        if (deferUpdate(ToolbarProperty.BACK_BUTTON_VISIBLE, visible)) {
+            return;
+        }
         setViewVisible(mBackButton, visible);
         updateBackButtonTouchDelegate(visible);
     }
@@ -324,6 +497,9 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * Sets the header title visibility to given value.
      */
     public void setToolbarTitleVisible(boolean visible) {
+        if (deferUpdate(ToolbarProperty.TITLE_VISIBLE, visible)) {
+            return;
+        }
         setViewVisible(mToolbarTitle, visible);
     }
 
@@ -331,6 +507,9 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * Sets the header title text to the provided text.
      */
     public void setToolbarTitleText(String text) {
+        if (deferUpdate(ToolbarProperty.TITLE_TEXT, text)) {
+            return;
+        }
         mToolbarTitle.setText(text);
     }
 
@@ -357,6 +536,9 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * Set the primary continue button visibility to the given visibility.
      */
     public void setPrimaryToolbarButtonVisible(boolean visible) {
+        if (deferUpdate(ToolbarProperty.PRIMARY_BUTTON_VISIBLE, visible)) {
+            return;
+        }
         setViewVisible(mPrimaryToolbarButton, visible);
     }
 
@@ -364,6 +546,9 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * Set whether the primary continue button is enabled.
      */
     public void setPrimaryToolbarButtonEnabled(boolean enabled) {
+        if (deferUpdate(ToolbarProperty.PRIMARY_BUTTON_ENABLED, enabled)) {
+            return;
+        }
         mPrimaryToolbarButton.setEnabled(enabled);
     }
 
@@ -371,17 +556,17 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * Set the primary continue button text to the given text.
      */
     public void setPrimaryToolbarButtonText(String text) {
+        if (deferUpdate(ToolbarProperty.PRIMARY_BUTTON_TEXT, text)) {
+            return;
+        }
         mPrimaryToolbarButton.setText(text);
     }
 
     /**
      * Set the primary continue button onClickListener to the given listener. Can be null if the
-     * listener should be overridden so no callback is made. All changes to primary toolbar
-     * button's onClickListener should be made here so they can be stored through changes to the
-     * button.
+     * listener should be overridden so no callback is made.
      */
     public void setPrimaryToolbarButtonListener(@Nullable View.OnClickListener listener) {
-        mPrimaryToolbarButtonOnClick = listener;
         mPrimaryToolbarButton.setOnClickListener(listener);
     }
 
@@ -393,10 +578,8 @@ class CarSetupWizardBaseLayout extends LinearLayout {
     }
 
     /**
-     * Changes the button in the primary slot to a flat theme, maintaining the text, visibility,
-     * whether it is enabled, and id.
-     * <p>NOTE: that other attributes set manually on the primaryToolbarButton will be lost on calls
-     * to this method as the button will be replaced.</p>
+     * Switches the primary toolbar button between the flat and raised styles. The button is
+     * restyled in place, so its text, listeners and any other state are kept.
      */
     public void setPrimaryToolbarButtonFlat(boolean isFlat) {
         // Do nothing if the state isn't changing.
@@ -404,30 +587,22 @@ class CarSetupWizardBaseLayout extends LinearLayout {
             return;
         }
         mPrimaryToolbarButtonFlat = isFlat;
-        Button newPrimaryButton = createPrimaryToolbarButton(isFlat);
-
-        ViewGroup parent = (ViewGroup) findViewById(R.id.button_container);
-        int buttonIndex = parent.indexOfChild(mPrimaryToolbarButton);
-        parent.removeViewAt(buttonIndex);
-        parent.addView(newPrimaryButton, buttonIndex);
-
-        // Update state of layout
-        setPrimaryToolbarButton(newPrimaryButton);
+        getButtonDefaults(isFlat).apply(mPrimaryToolbarButton);
+        stylePrimaryToolbarButton(mPrimaryToolbarButton);
     }
 
-    @VisibleForTesting
-    Button createPrimaryToolbarButton(boolean isFlat) {
-        int layoutId = isFlat ? R.layout.flat_button : R.layout.primary_button;
-        Button newPrimaryButton = (Button) inflate(getContext(), layoutId, null);
-        newPrimaryButton.setId(mPrimaryToolbarButton.getId());
-        newPrimaryButton.setVisibility(mPrimaryToolbarButton.getVisibility());
-        newPrimaryButton.setEnabled(mPrimaryToolbarButton.isEnabled());
-        newPrimaryButton.setText(mPrimaryToolbarButton.getText());
-        newPrimaryButton.setOnClickListener(mPrimaryToolbarButtonOnClick);
-        newPrimaryButton.setLayoutParams(mPrimaryToolbarButton.getLayoutParams());
-        stylePrimaryToolbarButton(newPrimaryButton);
-
-        return newPrimaryButton;
+    private ButtonDefaults getButtonDefaults(boolean isFlat) {
+        if (isFlat) {
+            if (mFlatButtonDefaults == null) {
+                mFlatButtonDefaults = ButtonDefaults.obtain(
+                        getContext(), android.R.attr.borderlessButtonStyle);
+            }
+            return mFlatButtonDefaults;
+        }
+        if (mRaisedButtonDefaults == null) {
+            mRaisedButtonDefaults = ButtonDefaults.obtain(getContext(), android.R.attr.buttonStyle);
+        }
+        return mRaisedButtonDefaults;
     }
 
     /**
@@ -441,6 +616,9 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * Set the secondary continue button visibility to the given visibility.
      */
     public void setSecondaryToolbarButtonVisible(boolean visible) {
+        if (deferUpdate(ToolbarProperty.SECONDARY_BUTTON_VISIBLE, visible)) {
+            return;
+        }
         // If not setting it visible and it hasn't been inflated yet then don't inflate.
         if (!visible && mSecondaryToolbarButton == null) {
             return;
@@ -453,6 +631,9 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * Sets whether the secondary continue button is enabled.
      */
     public void setSecondaryToolbarButtonEnabled(boolean enabled) {
+        if (deferUpdate(ToolbarProperty.SECONDARY_BUTTON_ENABLED, enabled)) {
+            return;
+        }
         maybeInflateSecondaryToolbarButton();
         mSecondaryToolbarButton.setEnabled(enabled);
     }
@@ -461,6 +642,9 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * Sets the secondary continue button text to the given text.
      */
     public void setSecondaryToolbarButtonText(String text) {
+        if (deferUpdate(ToolbarProperty.SECONDARY_BUTTON_TEXT, text)) {
+            return;
+        }
         maybeInflateSecondaryToolbarButton();
         mSecondaryToolbarButton.setText(text);
     }
@@ -474,6 +658,13 @@ class CarSetupWizardBaseLayout extends LinearLayout {
         mSecondaryToolbarButton.setOnClickListener(listener);
     }
 
+    /**
+     * Gets the partner configuration this layout was styled with.
+     */
+    PartnerConfigSnapshot getPartnerConfigSnapshot() {
+        return mPartnerConfigSnapshot;
+    }
+
     /**
      * Gets the progress bar.
      */
@@ -485,6 +676,9 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * Sets the progress bar visibility to the given visibility.
      */
     public void setProgressBarVisible(boolean visible) {
+        if (deferUpdate(ToolbarProperty.PROGRESS_BAR_VISIBLE, visible)) {
+            return;
+        }
         setViewVisible(mProgressBar, visible);
     }
 
@@ -492,6 +686,9 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * Sets the progress bar indeterminate/determinate state.
      */
     public void setProgressBarIndeterminate(boolean indeterminate) {
+        if (deferUpdate(ToolbarProperty.PROGRESS_BAR_INDETERMINATE, indeterminate)) {
+            return;
+        }
         mProgressBar.setIndeterminate(indeterminate);
     }
 
@@ -500,9 +697,121 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      */
     public void setProgressBarProgress(int progress) {
         setProgressBarIndeterminate(false);
+        if (deferUpdate(ToolbarProperty.PROGRESS_BAR_PROGRESS, progress)) {
+            return;
+        }
         mProgressBar.setProgress(progress);
     }
 
+    /**
+     * Sets the progress bar's progress from any thread, attached or not. Updates are coalesced to
+     * at most one per {@link Choreographer} frame: only the latest progress posted before a frame
+     * is applied, the ones it replaced are dropped. Use this over {@link #setProgressBarProgress}
+     * for frequent progress callbacks.
+     */
+    @AnyThread
+    public void postProgressBarProgress(int progress) {
+        // Only the update that finds nothing pending schedules a frame callback. The main thread
+        // posts it, as the caller's thread may have no Choreographer.
+        if (mPendingProgress.getAndSet(progress) == NO_PENDING_PROGRESS) {
+            mMainHandler.post(mScheduleProgressFrame);
+        }
+    }
+
+    private void applyPendingProgress() {
+        int progress = mPendingProgress.getAndSet(NO_PENDING_PROGRESS);
+        if (progress != NO_PENDING_PROGRESS) {
+            setProgressBarProgress(progress);
+        }
+    }
+
+    /**
+     * Starts a batch of toolbar updates. Until the matching {@link #commit}, the setters of the
+     * toolbar title, buttons, back button and progress bar only record the requested state, and
+     * getters still return the views in their current state. Batches can be nested.
+     */
+    public void beginUpdate() {
+        mUpdateDepth++;
+    }
+
+    /**
+     * Ends a batch of toolbar updates started by {@link #beginUpdate} and applies the last state
+     * requested for each property, skipping the ones that didn't change, so the whole batch costs
+     * at most one layout pass.
+     */
+    public void commit() {
+        if (mUpdateDepth == 0) {
+            throw new IllegalStateException("commit() called without beginUpdate()");
+        }
+        if (--mUpdateDepth > 0) {
+            return;
+        }
+        // Applied in declaration order, which keeps the progress after its indeterminate state.
+        for (Map.Entry<ToolbarProperty, Object> update : mPendingUpdates.entrySet()) {
+            applyUpdate(update.getKey(), update.getValue());
+        }
+        mPendingUpdates.clear();
+    }
+
+    /** Records an update of {@code property} if a batch is open, returning whether it did. */
+    private boolean deferUpdate(ToolbarProperty property, Object value) {
+        if (mUpdateDepth == 0) {
+            return false;
+        }
+        mPendingUpdates.put(property, value);
+        return true;
+    }
+
+    private void applyUpdate(ToolbarProperty property, Object value) {
+        switch (property) {
+            case BACK_BUTTON_VISIBLE:
+                setBackButtonVisible((Boolean) value);
+                break;
+            case TITLE_VISIBLE:
+                setToolbarTitleVisible((Boolean) value);
+                break;
+            case TITLE_TEXT:
+                // Setting text relayouts even if it is the same.
+                if (!TextUtils.equals(mToolbarTitle.getText(), (String) value)) {
+                    setToolbarTitleText((String) value);
+                }
+                break;
+            case PRIMARY_BUTTON_VISIBLE:
+                setPrimaryToolbarButtonVisible((Boolean) value);
+                break;
+            case PRIMARY_BUTTON_ENABLED:
+                setPrimaryToolbarButtonEnabled((Boolean) value);
+                break;
+            case PRIMARY_BUTTON_TEXT:
+                if (!TextUtils.equals(mPrimaryToolbarButton.getText(), (String) value)) {
+                    setPrimaryToolbarButtonText((String) value);
+                }
+                break;
+            case SECONDARY_BUTTON_TEXT:
+                if (mSecondaryToolbarButton == null
+                        || !TextUtils.equals(mSecondaryToolbarButton.getText(), (String) value)) {
+                    setSecondaryToolbarButtonText((String) value);
+                }
+                break;
+            case SECONDARY_BUTTON_ENABLED:
+                setSecondaryToolbarButtonEnabled((Boolean) value);
+                break;
+            case SECONDARY_BUTTON_VISIBLE:
+                setSecondaryToolbarButtonVisible((Boolean) value);
+                break;
+            case PROGRESS_BAR_VISIBLE:
+                setProgressBarVisible((Boolean) value);
+                break;
+            case PROGRESS_BAR_INDETERMINATE:
+                setProgressBarIndeterminate((Boolean) value);
+                break;
+            case PROGRESS_BAR_PROGRESS:
+                // The indeterminate state is recorded separately.
+                mProgressBar.setProgress((Integer) value);
+                break;
+        }
+    }
+
     /**
      * Sets the locale to be used for rendering.
      */
@@ -530,18 +839,7 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * @param animate True when a smooth animation is wanted for the adding of the elevation.
      */
     public void addElevationToTitleBar(boolean animate) {
-        if (animate) {
-            ValueAnimator elevationAnimator =
-                    ValueAnimator.ofFloat(mTitleBar.getElevation(), mTitleBarElevation);
-            elevationAnimator
-                    .setDuration(ANIMATION_DURATION_MS)
-                    .addUpdateListener(
-                            animation -> mTitleBar.setElevation(
-                                    (float) animation.getAnimatedValue()));
-            elevationAnimator.start();
-        } else {
-            mTitleBar.setElevation(mTitleBarElevation);
-        }
+        mTitleBarElevationController.setElevated(true, animate);
     }
 
     /**
@@ -551,18 +849,15 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * @param animate True when a smooth animation is wanted for the removal of the elevation.
      */
     public void removeElevationFromTitleBar(boolean animate) {
-        if (animate) {
-            ValueAnimator elevationAnimator =
-                    ValueAnimator.ofFloat(mTitleBar.getElevation(), 0f);
-            elevationAnimator
-                    .setDuration(ANIMATION_DURATION_MS)
-                    .addUpdateListener(
-                            animation -> mTitleBar.setElevation(
-                                    (float) animation.getAnimatedValue()));
-            elevationAnimator.start();
-        } else {
-            mTitleBar.setElevation(0f);
-        }
+        mTitleBarElevationController.setElevated(false, animate);
+    }
+
+    /**
+     * Gets the controller of the title bar elevation, which can link it to the scroll position of
+     * the page content.
+     */
+    public TitleBarElevationController getTitleBarElevationController() {
+        return mTitleBarElevationController;
     }
 
     /**
@@ -577,41 +872,54 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      * inflated. If it has been inflated already this method will do nothing.
      */
     private void maybeInflateSecondaryToolbarButton() {
-        ViewStub secondaryToolbarButtonStub = findViewById(R.id.secondary_toolbar_button_stub);
-        // If the secondaryToolbarButtonStub is null then the stub has been inflated so there is
-        // nothing to do.
-        if (secondaryToolbarButtonStub != null) {
-            secondaryToolbarButtonStub.inflate();
-            mSecondaryToolbarButton = findViewById(R.id.secondary_toolbar_button);
-            setSecondaryToolbarButtonVisible(false);
-
-            setBackground(
-                    mSecondaryToolbarButton,
-                    PartnerConfig.CONFIG_TOOLBAR_SECONDARY_BUTTON_BG,
-                    PartnerConfig.CONFIG_TOOLBAR_SECONDARY_BUTTON_BG_COLOR);
-
-            setButtonPadding(mSecondaryToolbarButton);
-            setButtonTypeFace(mSecondaryToolbarButton);
-            setButtonTextSize(mSecondaryToolbarButton);
-            setButtonTextColor(
-                    mSecondaryToolbarButton,
-                    PartnerConfig.CONFIG_TOOLBAR_SECONDARY_BUTTON_TEXT_COLOR);
-
-            // Set button spacing
-            float marginEnd = PartnerConfigHelper.get(getContext()).getDimension(
-                    getContext(),
-                    PartnerConfig.CONFIG_TOOLBAR_BUTTON_SPACING);
+        if (mSecondaryToolbarButton == null) {
+            mSecondaryToolbarButton = addToolbarButton(ButtonStyle.Variant.SECONDARY);
+            // Not through the public setter, which a batch would defer and override with.
+            setViewVisible(mSecondaryToolbarButton, false);
+        }
+    }
 
-            MarginLayoutParams layoutParams =
-                    (MarginLayoutParams) mSecondaryToolbarButton.getLayoutParams();
-            layoutParams.setMarginEnd(Math.round(marginEnd));
+    /**
+     * Adds a toolbar button of the given {@code variant} to the toolbar, styled while it is
+     * created, and returns it. Inflated toolbars hold a stub for each button; built ones don't.
+     */
+    private Button addToolbarButton(ButtonStyle.Variant variant) {
+        boolean isSecondary = variant == ButtonStyle.Variant.SECONDARY;
+        Button button;
+        if (mBuildToolbarInCode) {
+            button = new CarSetupWizardToolbarBuilder(getContext(), mPartnerConfigSnapshot)
+                    .buildButton(variant);
+            button.setId(isSecondary ? R.id.secondary_toolbar_button : R.id.primary_toolbar_button);
+            // The secondary button goes before the primary one, which ends the toolbar.
+            ViewGroup toolbar = (ViewGroup) mTitleBar;
+            toolbar.addView(button, isSecondary && mPrimaryToolbarButton != null
+                    ? toolbar.indexOfChild(mPrimaryToolbarButton)
+                    : toolbar.getChildCount());
+        } else {
+            ViewStub stub = findViewById(isSecondary
+                    ? R.id.secondary_toolbar_button_stub
+                    : R.id.primary_toolbar_button_stub);
+            if (variant == ButtonStyle.Variant.FLAT) {
+                stub.setLayoutResource(R.layout.flat_button);
+            }
+            stub.setLayoutInflater(
+                    PartnerStyledInflater.create(getContext(), mPartnerConfigSnapshot, variant));
+            button = (Button) stub.inflate();
         }
+        // Layout params are only final once the button is in the toolbar.
+        ButtonStyle.get(mPartnerConfigSnapshot, variant).applyLayoutParams(button);
+        return button;
+    }
+
+    private void styleSecondaryToolbarButton() {
+        ButtonStyle.get(mPartnerConfigSnapshot, ButtonStyle.Variant.SECONDARY)
+                .apply(mSecondaryToolbarButton);
     }
 
     /** Sets button text color using partner overlay if exists */
     @VisibleForTesting
     void setButtonTextColor(TextView button, PartnerConfig config) {
-        int color = mPartnerConfigHelper.getColor(getContext(), config);
+        int color = mPartnerConfigSnapshot.getColor(config);
         if (color != 0) {
             button.setTextColor(color);
         }
@@ -624,12 +932,13 @@ class CarSetupWizardBaseLayout extends LinearLayout {
      */
     @VisibleForTesting
     void setBackground(View view, PartnerConfig bgConfig, PartnerConfig bgColorConfig) {
-        Drawable background = mPartnerConfigHelper.getDrawable(getContext(), bgConfig);
+        Drawable background = mPartnerConfigSnapshot.getDrawable(bgConfig);
         if (background == null) {
-            if (view instanceof Button) {
-                setButtonRadius((Button) view);
-            }
-            setBackgroundColor(view, bgColorConfig);
+            float radius = view instanceof Button
+                    ? mPartnerConfigSnapshot.getDimension(
+                            PartnerConfig.CONFIG_TOOLBAR_BUTTON_RADIUS)
+                    : ButtonBackgroundCache.KEEP_RADIUS;
+            setStyledBackground(view, mPartnerConfigSnapshot.getColor(bgColorConfig), radius);
         } else {
             view.setBackground(background);
         }
@@ -638,106 +947,50 @@ class CarSetupWizardBaseLayout extends LinearLayout {
     /** Sets button background color using partner overlay if exists */
     @VisibleForTesting
     void setBackgroundColor(View button, PartnerConfig config) {
-        int color = mPartnerConfigHelper.getColor(getContext(), config);
+        int color = mPartnerConfigSnapshot.getColor(config);
         if (color != 0) {
-            Drawable background = button.getBackground();
-            if (background != null) {
-                background.mutate().setColorFilter(color, PorterDuff.Mode.SRC_ATOP);
-            }
+            setStyledBackground(button, color, ButtonBackgroundCache.KEEP_RADIUS);
+        }
+    }
+
+    /**
+     * Replaces the background of the given view with a shared, cached variant of it styled with
+     * the given color and corner radius, so the drawable state of other views is left untouched.
+     */
+    private static void setStyledBackground(View view, int color, float cornerRadius) {
+        Drawable background = view.getBackground();
+        if (background == null) {
+            return;
+        }
+        Drawable styledBackground =
+                ButtonBackgroundCache.getStyledBackground(background, color, cornerRadius);
+        if (styledBackground != background) {
+            // Keep the current padding rather than picking up the padding of the drawable.
+            int start = view.getPaddingStart();
+            int top = view.getPaddingTop();
+            int end = view.getPaddingEnd();
+            int bottom = view.getPaddingBottom();
+            view.setBackground(styledBackground);
+            view.setPaddingRelative(start, top, end, bottom);
         }
     }
 
     /** Sets button text size using partner overlay if exists */
     @VisibleForTesting
     void setButtonTextSize(TextView button) {
-        float dimension = mPartnerConfigHelper.getDimension(
-                getContext(),
+        float dimension = mPartnerConfigSnapshot.getDimension(
                 PartnerConfig.CONFIG_TOOLBAR_BUTTON_TEXT_SIZE);
         if (dimension != 0) {
             button.setTextSize(TypedValue.COMPLEX_UNIT_PX, dimension);
         }
     }
 
-    /** Sets button type face with partner overlay if exists */
-    private void setButtonTypeFace(TextView button) {
-        String fontFamily = mPartnerConfigHelper.getString(
-                getContext(),
-                PartnerConfig.CONFIG_TOOLBAR_BUTTON_FONT_FAMILY);
-        if (TextUtils.isEmpty(fontFamily)) {
-            return;
-        }
-
-        Typeface typeface = Typeface.create(fontFamily, Typeface.NORMAL);
-        if (Objects.equals(typeface, Typeface.DEFAULT)) {
-            Log.w(TAG, String.format(
-                    "Couldn't find font: %s. Setting default font.",
-                    fontFamily));
-        }
-        button.setTypeface(typeface);
-    }
-
-    /** Sets button radius using partner overlay if exists */
-    private void setButtonRadius(Button button) {
-        float radius = mPartnerConfigHelper.getDimension(
-                getContext(),
-                PartnerConfig.CONFIG_TOOLBAR_BUTTON_RADIUS);
-
-        GradientDrawable gradientDrawable = getGradientDrawable(button);
-        if (gradientDrawable != null) {
-            gradientDrawable.setCornerRadius(radius);
-        }
-    }
-
-    private void setButtonPadding(Button button) {
-        int hPadding = Math.round(
-                PartnerConfigHelper.get(getContext()).getDimension(
-                        getContext(),
-                        PartnerConfig.CONFIG_TOOLBAR_BUTTON_PADDING_HORIZONTAL)
-        );
-        int vPadding = Math.round(
-                PartnerConfigHelper.get(getContext()).getDimension(
-                        getContext(),
-                        PartnerConfig.CONFIG_TOOLBAR_BUTTON_PADDING_VERTICAL)
-        );
-        button.setPadding(hPadding, vPadding, hPadding, vPadding);
-    }
-
     private void stylePrimaryToolbarButton(Button primaryButton) {
-        if (!mPrimaryToolbarButtonFlat) {
-            setBackground(
-                    primaryButton,
-                    PartnerConfig.CONFIG_TOOLBAR_PRIMARY_BUTTON_BG,
-                    PartnerConfig.CONFIG_TOOLBAR_PRIMARY_BUTTON_BG_COLOR);
-        }
-
-        setButtonPadding(primaryButton);
-        setButtonTypeFace(primaryButton);
-        setButtonTextSize(primaryButton);
-
-        PartnerConfig textColorConfig = mPrimaryToolbarButtonFlat
-                ? PartnerConfig.CONFIG_TOOLBAR_SECONDARY_BUTTON_TEXT_COLOR
-                : PartnerConfig.CONFIG_TOOLBAR_PRIMARY_BUTTON_TEXT_COLOR;
-        setButtonTextColor(primaryButton, textColorConfig);
-    }
-
-    private GradientDrawable getGradientDrawable(Button button) {
-        Drawable drawable = button.getBackground();
-        if (drawable instanceof InsetDrawable) {
-            return getGradientDrawableFromInsetDrawable((InsetDrawable) drawable);
-        }
-
-        if (drawable instanceof RippleDrawable) {
-            drawable = ((RippleDrawable) drawable).getDrawable(0);
-            if (drawable instanceof InsetDrawable) {
-                return getGradientDrawableFromInsetDrawable((InsetDrawable) drawable);
-            }
-            return (GradientDrawable) drawable;
-        }
-
-        return null;
+        ButtonStyle.get(mPartnerConfigSnapshot, getPrimaryToolbarButtonVariant())
+                .apply(primaryButton);
     }
 
-    private GradientDrawable getGradientDrawableFromInsetDrawable(InsetDrawable insetDrawable) {
-        return (GradientDrawable) insetDrawable.getDrawable();
+    private ButtonStyle.Variant getPrimaryToolbarButtonVariant() {
+        return mPrimaryToolbarButtonFlat ? ButtonStyle.Variant.FLAT : ButtonStyle.Variant.PRIMARY;
     }
 }
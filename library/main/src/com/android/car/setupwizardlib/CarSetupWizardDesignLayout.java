@@ -22,7 +22,9 @@ import android.content.res.ColorStateList;
 import android.util.AttributeSet;
 
 import com.android.car.setupwizardlib.partner.PartnerConfig;
-import com.android.car.setupwizardlib.partner.PartnerConfigHelper;
+import com.android.car.setupwizardlib.partner.PartnerConfigSnapshot;
+
+import java.util.Set;
 
 /**
  * This layout applies heavy theming attributes from the partner overlay.
@@ -48,20 +50,26 @@ public class CarSetupWizardDesignLayout extends CarSetupWizardBaseLayout {
     public CarSetupWizardDesignLayout(Context context, @Nullable AttributeSet attrs,
             int defStyleAttr, int defStyleRes) {
         super(context, attrs, defStyleAttr, defStyleRes);
+    }
+
+    @Override
+    void applyPartnerConfig(Set<PartnerConfig> changedConfigs) {
+        super.applyPartnerConfig(changedConfigs);
 
-        PartnerConfigHelper partnerConfigHelper = PartnerConfigHelper.get(context);
-        int bgColor = partnerConfigHelper.getColor(
-                context,
-                PartnerConfig.CONFIG_LAYOUT_BG_COLOR);
-        if (bgColor != 0) {
-            setBackgroundColor(bgColor);
+        PartnerConfigSnapshot partnerConfigSnapshot = getPartnerConfigSnapshot();
+        if (changedConfigs.contains(PartnerConfig.CONFIG_LAYOUT_BG_COLOR)) {
+            int bgColor = partnerConfigSnapshot.getColor(PartnerConfig.CONFIG_LAYOUT_BG_COLOR);
+            if (bgColor != 0) {
+                setBackgroundColor(bgColor);
+            }
         }
 
-        int tintColor = partnerConfigHelper.getColor(
-                context,
-                PartnerConfig.CONFIG_LOADING_INDICATOR_COLOR);
-        if (tintColor != 0) {
-            getProgressBar().setIndeterminateTintList(ColorStateList.valueOf(tintColor));
+        if (changedConfigs.contains(PartnerConfig.CONFIG_LOADING_INDICATOR_COLOR)) {
+            int tintColor =
+                    partnerConfigSnapshot.getColor(PartnerConfig.CONFIG_LOADING_INDICATOR_COLOR);
+            if (tintColor != 0) {
+                getProgressBar().setIndeterminateTintList(ColorStateList.valueOf(tintColor));
+            }
         }
     }
 }
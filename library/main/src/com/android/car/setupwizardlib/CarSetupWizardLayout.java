@@ -21,14 +21,12 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.PorterDuff;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.GradientDrawable;
 import android.graphics.drawable.InsetDrawable;
 import android.graphics.drawable.RippleDrawable;
 import android.text.TextUtils;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.TouchDelegate;
@@ -48,7 +46,6 @@ import com.android.car.setupwizardlib.partner.PartnerConfig;
 import com.android.car.setupwizardlib.partner.PartnerConfigHelper;
 
 import java.util.Locale;
-import java.util.Objects;
 
 /**
  * Custom layout for the Car Setup Wizard. Provides accessors for modifying elements such as buttons
@@ -206,18 +203,9 @@ public class CarSetupWizardLayout extends LinearLayout {
         if (showPrimaryToolbarButton) {
             setPrimaryToolbarButtonText(primaryToolbarButtonText);
             setPrimaryToolbarButtonEnabled(primaryToolbarButtonEnabled);
-
-            setBackground(
-                    mPrimaryToolbarButton,
-                    PartnerConfig.CONFIG_TOOLBAR_PRIMARY_BUTTON_BG,
-                    PartnerConfig.CONFIG_TOOLBAR_PRIMARY_BUTTON_BG_COLOR);
-
-            setButtonPadding(mPrimaryToolbarButton);
-            setButtonTypeFace(mPrimaryToolbarButton);
-            setButtonTextSize(mPrimaryToolbarButton);
-            setButtonTextColor(
-                    mPrimaryToolbarButton,
-                    PartnerConfig.CONFIG_TOOLBAR_PRIMARY_BUTTON_TEXT_COLOR);
+            ButtonStyle.get(
+                    mPartnerConfigHelper.getSnapshot(getContext()), ButtonStyle.Variant.PRIMARY)
+                    .apply(mPrimaryToolbarButton);
         } else {
             setPrimaryToolbarButtonVisible(false);
         }
@@ -595,27 +583,9 @@ public class CarSetupWizardLayout extends LinearLayout {
             secondaryToolbarButtonStub.inflate();
             mSecondaryToolbarButton = findViewById(R.id.secondary_toolbar_button);
             setSecondaryToolbarButtonVisible(false);
-
-            setBackground(
-                    mSecondaryToolbarButton,
-                    PartnerConfig.CONFIG_TOOLBAR_SECONDARY_BUTTON_BG,
-                    PartnerConfig.CONFIG_TOOLBAR_SECONDARY_BUTTON_BG_COLOR);
-
-            setButtonPadding(mSecondaryToolbarButton);
-            setButtonTypeFace(mSecondaryToolbarButton);
-            setButtonTextSize(mSecondaryToolbarButton);
-            setButtonTextColor(
-                    mSecondaryToolbarButton,
-                    PartnerConfig.CONFIG_TOOLBAR_SECONDARY_BUTTON_TEXT_COLOR);
-
-            // Set button spacing
-            float marginEnd = PartnerConfigHelper.get(getContext()).getDimension(
-                    getContext(),
-                    PartnerConfig.CONFIG_TOOLBAR_BUTTON_SPACING);
-
-            MarginLayoutParams layoutParams =
-                    (MarginLayoutParams) mSecondaryToolbarButton.getLayoutParams();
-            layoutParams.setMarginEnd(Math.round(marginEnd));
+            ButtonStyle.get(
+                    mPartnerConfigHelper.getSnapshot(getContext()), ButtonStyle.Variant.SECONDARY)
+                    .apply(mSecondaryToolbarButton);
         }
     }
 
@@ -669,24 +639,6 @@ public class CarSetupWizardLayout extends LinearLayout {
         }
     }
 
-    /** Sets button type face with partner overlay if exists */
-    private void setButtonTypeFace(TextView button) {
-        String fontFamily = mPartnerConfigHelper.getString(
-                getContext(),
-                PartnerConfig.CONFIG_TOOLBAR_BUTTON_FONT_FAMILY);
-        if (TextUtils.isEmpty(fontFamily)) {
-            return;
-        }
-
-        Typeface typeface = Typeface.create(fontFamily, Typeface.NORMAL);
-        if (Objects.equals(typeface, Typeface.DEFAULT)) {
-            Log.w(TAG, String.format(
-                    "Couldn't find font: %s. Setting default font.",
-                    fontFamily));
-        }
-        button.setTypeface(typeface);
-    }
-
     /** Sets button radius using partner overlay if exists */
     private void setButtonRadius(Button button) {
         float radius = mPartnerConfigHelper.getDimension(
@@ -699,20 +651,6 @@ public class CarSetupWizardLayout extends LinearLayout {
         }
     }
 
-    private void setButtonPadding(Button button) {
-        int hPadding = Math.round(
-                PartnerConfigHelper.get(getContext()).getDimension(
-                        getContext(),
-                        PartnerConfig.CONFIG_TOOLBAR_BUTTON_PADDING_HORIZONTAL)
-        );
-        int vPadding = Math.round(
-                PartnerConfigHelper.get(getContext()).getDimension(
-                        getContext(),
-                        PartnerConfig.CONFIG_TOOLBAR_BUTTON_PADDING_VERTICAL)
-        );
-        button.setPadding(hPadding, vPadding, hPadding, vPadding);
-    }
-
     private GradientDrawable getGradientDrawable(Button button) {
         Drawable drawable = button.getBackground();
         if (drawable instanceof InsetDrawable) {
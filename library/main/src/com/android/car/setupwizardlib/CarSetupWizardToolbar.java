@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.Nullable;
+
+/**
+ * A single level toolbar that positions the back button, title, toolbar buttons and progress bar
+ * itself, in place of the nested containers of {@code car_setup_wizard_toolbar}. Every child is
+ * measured once, and the toolbar and its title are given exact measure specs.
+ *
+ * <p>The back button is centered in a slot of {@code car_margin} at the start, the toolbar buttons
+ * are aligned {@code car_keyline_1} from the end, in child order, and the title takes the space in
+ * between. The progress bar spans the bottom. Children keep the ids of {@code
+ * car_setup_wizard_toolbar}, so {@link CarSetupWizardBaseLayout} drives either toolbar the same
+ * way.
+ */
+final class CarSetupWizardToolbar extends ViewGroup {
+
+    private final int mBackButtonSlotWidth;
+    private final int mButtonsMarginEnd;
+    private final int mDefaultHeight;
+
+    private View mBackButton;
+    private View mToolbarTitle;
+    private View mProgressBar;
+
+    public CarSetupWizardToolbar(Context context) {
+        this(context, null);
+    }
+
+    public CarSetupWizardToolbar(Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public CarSetupWizardToolbar(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        mBackButtonSlotWidth = getResources().getDimensionPixelSize(R.dimen.car_margin);
+        mButtonsMarginEnd = getResources().getDimensionPixelSize(R.dimen.car_keyline_1);
+        mDefaultHeight = getResources().getDimensionPixelSize(R.dimen.car_app_bar_height);
+    }
+
+    @Override
+    public void onViewAdded(View child) {
+        super.onViewAdded(child);
+        // Children are told apart by id, whether the toolbar is inflated or built in code.
+        int id = child.getId();
+        if (id == R.id.back_button) {
+            mBackButton = child;
+        } else if (id == R.id.toolbar_title) {
+            mToolbarTitle = child;
+        } else if (id == R.id.progress_bar) {
+            mProgressBar = child;
+        }
+    }
+
+    @Override
+    public void onViewRemoved(View child) {
+        super.onViewRemoved(child);
+        if (child == mBackButton) {
+            mBackButton = null;
+        } else if (child == mToolbarTitle) {
+            mToolbarTitle = null;
+        } else if (child == mProgressBar) {
+            mProgressBar = null;
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int height = resolveSize(mDefaultHeight, heightMeasureSpec);
+        int exactHeightSpec = MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY);
+
+        if (isNotGone(mBackButton)) {
+            measureChild(mBackButton,
+                    MeasureSpec.makeMeasureSpec(mBackButtonSlotWidth, MeasureSpec.AT_MOST),
+                    exactHeightSpec);
+        }
+
+        // The buttons get the space they need first; the title is cut short rather than them.
+        int buttonsWidth = 0;
+        int availableWidth = Math.max(0, width - mBackButtonSlotWidth - mButtonsMarginEnd);
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if (isToolbarButton(child) && isNotGone(child)) {
+                measureChildWithMargins(child,
+                        MeasureSpec.makeMeasureSpec(availableWidth, MeasureSpec.AT_MOST),
+                        buttonsWidth, exactHeightSpec, 0);
+                buttonsWidth += getWidthWithMargins(child);
+            }
+        }
+
+        if (isNotGone(mToolbarTitle)) {
+            int titleWidth = Math.max(0, availableWidth - buttonsWidth
+                    - getMarginStart(mToolbarTitle) - getMarginEnd(mToolbarTitle));
+            mToolbarTitle.measure(
+                    MeasureSpec.makeMeasureSpec(titleWidth, MeasureSpec.AT_MOST),
+                    exactHeightSpec);
+        }
+
+        if (isNotGone(mProgressBar)) {
+            measureChild(mProgressBar,
+                    MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                    exactHeightSpec);
+        }
+
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        int height = bottom - top;
+
+        if (isNotGone(mBackButton)) {
+            layoutChild(mBackButton,
+                    (mBackButtonSlotWidth - mBackButton.getMeasuredWidth()) / 2,
+                    (height - mBackButton.getMeasuredHeight()) / 2);
+        }
+
+        if (isNotGone(mToolbarTitle)) {
+            layoutChild(mToolbarTitle,
+                    mBackButtonSlotWidth + getMarginStart(mToolbarTitle),
+                    (height - mToolbarTitle.getMeasuredHeight()) / 2);
+        }
+
+        // Lay the buttons out from the end, so the last child is the closest to it.
+        int endOffset = mButtonsMarginEnd;
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            View child = getChildAt(i);
+            if (isToolbarButton(child) && isNotGone(child)) {
+                int childEnd = endOffset + getMarginEnd(child);
+                layoutChild(child,
+                        getWidth() - childEnd - child.getMeasuredWidth(),
+                        (height - child.getMeasuredHeight()) / 2);
+                endOffset += getWidthWithMargins(child);
+            }
+        }
+
+        if (isNotGone(mProgressBar)) {
+            layoutChild(mProgressBar, 0, height - mProgressBar.getMeasuredHeight());
+        }
+    }
+
+    /**
+     * Lays out {@code child} at its measured size, {@code startOffset} from the start edge, so the
+     * toolbar mirrors in right-to-left layouts.
+     */
+    private void layoutChild(View child, int startOffset, int top) {
+        int childWidth = child.getMeasuredWidth();
+        int childLeft = getLayoutDirection() == LAYOUT_DIRECTION_RTL
+                ? getWidth() - startOffset - childWidth
+                : startOffset;
+        child.layout(childLeft, top, childLeft + childWidth, top + child.getMeasuredHeight());
+    }
+
+    private boolean isToolbarButton(View child) {
+        return child != mBackButton && child != mToolbarTitle && child != mProgressBar;
+    }
+
+    private static boolean isNotGone(@Nullable View child) {
+        return child != null && child.getVisibility() != GONE;
+    }
+
+    private static int getWidthWithMargins(View child) {
+        return child.getMeasuredWidth() + getMarginStart(child) + getMarginEnd(child);
+    }
+
+    private static int getMarginStart(View child) {
+        return ((MarginLayoutParams) child.getLayoutParams()).getMarginStart();
+    }
+
+    private static int getMarginEnd(View child) {
+        return ((MarginLayoutParams) child.getLayoutParams()).getMarginEnd();
+    }
+
+    @Override
+    public boolean shouldDelayChildPressedState() {
+        return false;
+    }
+
+    @Override
+    protected boolean checkLayoutParams(ViewGroup.LayoutParams params) {
+        return params instanceof MarginLayoutParams;
+    }
+
+    @Override
+    protected MarginLayoutParams generateDefaultLayoutParams() {
+        return new MarginLayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
+    }
+
+    @Override
+    public MarginLayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new MarginLayoutParams(getContext(), attrs);
+    }
+
+    @Override
+    protected MarginLayoutParams generateLayoutParams(ViewGroup.LayoutParams params) {
+        return params instanceof MarginLayoutParams
+                ? new MarginLayoutParams((MarginLayoutParams) params)
+                : new MarginLayoutParams(params);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.PorterDuff;
+import android.text.TextUtils;
+import android.view.Gravity;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+import android.view.ViewGroup.MarginLayoutParams;
+import android.widget.Button;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+
+import com.android.car.setupwizardlib.partner.PartnerConfigSnapshot;
+
+/**
+ * Builds the view tree of {@code car_setup_wizard_flat_toolbar} and of the {@code primary_button}
+ * and {@code flat_button} layouts in code, sparing the XML parsing and reflection of inflating
+ * them. Keep it in sync with those layouts.
+ *
+ * <p>The toolbar is built without button stubs; {@link #buildButton} builds the buttons when they
+ * are needed, or inflates them for apps that set an inflater factory. Views are styled with the
+ * partner configuration as they are built, like {@link PartnerStyledInflater} does for inflated
+ * ones.
+ */
+final class CarSetupWizardToolbarBuilder {
+
+    private final Context mContext;
+    private final Resources mResources;
+    private final PartnerConfigSnapshot mSnapshot;
+
+    CarSetupWizardToolbarBuilder(
+            @NonNull Context context, @NonNull PartnerConfigSnapshot snapshot) {
+        mContext = context;
+        mResources = context.getResources();
+        mSnapshot = snapshot;
+    }
+
+    /**
+     * Builds the toolbar with its back button, title and progress bar, laid out to be added to a
+     * vertical {@link LinearLayout}.
+     */
+    @NonNull
+    CarSetupWizardToolbar buildToolbar() {
+        CarSetupWizardToolbar toolbar = new CarSetupWizardToolbar(mContext);
+        toolbar.setId(R.id.application_bar);
+        toolbar.setLayoutParams(new LinearLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                mResources.getDimensionPixelSize(R.dimen.car_app_bar_height)));
+        TypedArray attrs = mContext.obtainStyledAttributes(new int[] {
+                android.R.attr.windowBackground, android.R.attr.colorAccent});
+        try {
+            toolbar.setBackground(attrs.getDrawable(0));
+            toolbar.addView(buildBackButton());
+            toolbar.addView(buildToolbarTitle());
+            toolbar.addView(buildProgressBar(attrs.getColorStateList(1)));
+        } finally {
+            attrs.recycle();
+        }
+        PartnerStyledInflater.styleTitleBar(toolbar, mSnapshot);
+        return toolbar;
+    }
+
+    /**
+     * Builds a toolbar button of the given {@code variant}: {@code primary_button} for the raised
+     * primary button, {@code flat_button} otherwise. The button is styled with the partner style
+     * of the variant, except for its layout params, which are only final once it is added to the
+     * toolbar.
+     *
+     * <p>An inflated button takes the layout params of its stub, so these mirror the stubs of
+     * {@code car_setup_wizard_flat_toolbar} rather than the button layouts.
+     */
+    @NonNull
+    Button buildButton(@NonNull ButtonStyle.Variant variant) {
+        Button button;
+        if (LayoutInflater.from(mContext).getFactory() != null) {
+            // The factory of the app, e.g. AppCompat's, may create its own button class, and
+            // only asks the inflater which one.
+            button = (Button) PartnerStyledInflater.create(mContext, mSnapshot, variant).inflate(
+                    variant == ButtonStyle.Variant.PRIMARY
+                            ? R.layout.primary_button
+                            : R.layout.flat_button,
+                    /* root= */ null);
+        } else {
+            button = variant == ButtonStyle.Variant.PRIMARY
+                    ? new Button(mContext)
+                    : new Button(mContext, null, android.R.attr.borderlessButtonStyle);
+            button.setMinHeight(mResources.getDimensionPixelSize(R.dimen.car_button_height));
+            button.setEllipsize(TextUtils.TruncateAt.END);
+            button.setMaxLines(1);
+            ButtonStyle.get(mSnapshot, variant).applyAttributes(button);
+        }
+        MarginLayoutParams params = new MarginLayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+        if (variant == ButtonStyle.Variant.SECONDARY) {
+            params.setMarginEnd(mResources.getDimensionPixelSize(R.dimen.car_padding_4));
+        }
+        button.setLayoutParams(params);
+        return button;
+    }
+
+    private ImageView buildBackButton() {
+        ImageView backButton = new ImageView(mContext);
+        backButton.setId(R.id.back_button);
+        int iconSize = mResources.getDimensionPixelSize(R.dimen.car_primary_icon_size);
+        backButton.setLayoutParams(new MarginLayoutParams(iconSize, iconSize));
+        backButton.setBackgroundResource(R.drawable.button_ripple_bg);
+        backButton.setContentDescription(
+                mResources.getString(R.string.back_button_content_description));
+        backButton.setImageResource(R.drawable.car_ic_arrow_back);
+        PartnerStyledInflater.styleBackButton(backButton, mSnapshot);
+        return backButton;
+    }
+
+    private TextView buildToolbarTitle() {
+        TextView toolbarTitle = new TextView(mContext);
+        toolbarTitle.setId(R.id.toolbar_title);
+        MarginLayoutParams params = new MarginLayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.MATCH_PARENT);
+        params.setMarginEnd(mResources.getDimensionPixelSize(R.dimen.car_keyline_1));
+        toolbarTitle.setLayoutParams(params);
+        toolbarTitle.setGravity(Gravity.CENTER_VERTICAL);
+        toolbarTitle.setMaxLines(1);
+        toolbarTitle.setEllipsize(TextUtils.TruncateAt.END);
+        toolbarTitle.setTextAppearance(R.style.TextAppearance_Car_Body1_Medium);
+        return toolbarTitle;
+    }
+
+    private ProgressBar buildProgressBar(ColorStateList accentColor) {
+        ProgressBar progressBar =
+                new ProgressBar(mContext, null, android.R.attr.progressBarStyleHorizontal);
+        progressBar.setId(R.id.progress_bar);
+        progressBar.setLayoutParams(new MarginLayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        progressBar.setIndeterminateTintList(accentColor);
+        progressBar.setIndeterminateTintMode(PorterDuff.Mode.SRC_IN);
+        return progressBar;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import android.graphics.Rect;
+import android.view.MotionEvent;
+import android.view.TouchDelegate;
+import android.view.View;
+import android.view.ViewConfiguration;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * A {@link TouchDelegate} that grows the touch target of a view by a fixed amount on every side.
+ * Set it on the parent of the view.
+ *
+ * <p>The bounds follow the view: they are recomputed by a layout change listener when, and only
+ * when, the bounds of the view change, in place, so a single instance serves the view for its
+ * whole life. They are also the bounds given to {@link TouchDelegate}, which keeps them rather
+ * than a copy, so accessibility services see the current touch target. Touches are only
+ * delegated while the view is visible, so the delegate doesn't need to be removed when the view
+ * is hidden.
+ */
+final class ExpandedTouchDelegate extends TouchDelegate implements View.OnLayoutChangeListener {
+
+    private final View mDelegateView;
+    private final int mExpansion;
+    private final int mSlop;
+    /** The expanded hit rect of the delegate view, in the coordinates of its parent. */
+    private final Rect mBounds;
+    /** {@link #mBounds} grown by the touch slop, for the gestures started in them. */
+    private final Rect mSlopBounds = new Rect();
+    /** Whether the current gesture started in the bounds and is delegated. */
+    private boolean mDelegateTargeted;
+
+    /**
+     * Creates a delegate that grows the touch target of {@code delegateView} by {@code expansion}
+     * pixels on every side.
+     */
+    ExpandedTouchDelegate(@NonNull View delegateView, int expansion) {
+        this(new Rect(), delegateView, expansion);
+    }
+
+    private ExpandedTouchDelegate(Rect bounds, View delegateView, int expansion) {
+        super(bounds, delegateView);
+        mBounds = bounds;
+        mDelegateView = delegateView;
+        mExpansion = expansion;
+        mSlop = ViewConfiguration.get(delegateView.getContext()).getScaledTouchSlop();
+        updateBounds();
+        delegateView.addOnLayoutChangeListener(this);
+    }
+
+    /** Gets the view the touch target is grown for. */
+    View getDelegateView() {
+        return mDelegateView;
+    }
+
+    /** Stops following the layout of the delegate view. */
+    void release() {
+        mDelegateView.removeOnLayoutChangeListener(this);
+    }
+
+    @VisibleForTesting
+    Rect getBounds() {
+        return mBounds;
+    }
+
+    @Override
+    public void onLayoutChange(View view, int left, int top, int right, int bottom,
+            int oldLeft, int oldTop, int oldRight, int oldBottom) {
+        if (left != oldLeft || top != oldTop || right != oldRight || bottom != oldBottom) {
+            updateBounds();
+        }
+    }
+
+    private void updateBounds() {
+        mDelegateView.getHitRect(mBounds);
+        mBounds.inset(-mExpansion, -mExpansion);
+        mSlopBounds.set(mBounds);
+        mSlopBounds.inset(-mSlop, -mSlop);
+    }
+
+    @Override
+    public boolean onTouchEvent(@NonNull MotionEvent event) {
+        int x = (int) event.getX();
+        int y = (int) event.getY();
+        boolean sendToDelegate = false;
+        boolean hit = true;
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mDelegateTargeted = mDelegateView.getVisibility() == View.VISIBLE
+                        && mBounds.contains(x, y);
+                sendToDelegate = mDelegateTargeted;
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_POINTER_UP:
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_MOVE:
+                sendToDelegate = mDelegateTargeted;
+                hit = mSlopBounds.contains(x, y);
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                sendToDelegate = mDelegateTargeted;
+                mDelegateTargeted = false;
+                break;
+        }
+        if (!sendToDelegate) {
+            return false;
+        }
+        if (hit) {
+            // Offset the event to the center of the view, which is sure to be inside it.
+            event.setLocation(mDelegateView.getWidth() / 2f, mDelegateView.getHeight() / 2f);
+        } else {
+            // Offset the event far enough outside the view that it doesn't count as a click.
+            event.setLocation(-(mSlop * 2), -(mSlop * 2));
+        }
+        return mDelegateView.dispatchTouchEvent(event);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import android.os.MessageQueue;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+
+/**
+ * Defers work a view doesn't need for its first frame until the main thread is idle after that
+ * frame is drawn. Tasks run one per {@link MessageQueue.IdleHandler} call, so a pending frame or
+ * input event waits for at most one of them.
+ *
+ * <p>Work that input depends on must not be left pending when the input arrives: the host calls
+ * {@link #runPendingTasks} before it dispatches touch and key events.
+ */
+@MainThread
+final class IdleWorkScheduler implements MessageQueue.IdleHandler,
+        View.OnAttachStateChangeListener, ViewTreeObserver.OnPreDrawListener {
+
+    private final View mHost;
+    /** The queue of the thread the host was last attached on, where the idle handler goes. */
+    @Nullable private MessageQueue mQueue;
+    private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+    /** Posted from the first pre-draw, so it runs once the first frame is drawn. */
+    private final Runnable mOnFirstFrameDrawn = this::onFirstFrameDrawn;
+
+    private boolean mFirstFrameDrawn;
+    private boolean mIdleHandlerAdded;
+
+    IdleWorkScheduler(@NonNull View host) {
+        mHost = host;
+        host.addOnAttachStateChangeListener(this);
+        if (host.isAttachedToWindow()) {
+            onViewAttachedToWindow(host);
+        }
+    }
+
+    /**
+     * Runs {@code task} once the main thread is idle after the first frame of the host, or earlier
+     * if {@link #runPendingTasks} is called first. Does nothing if {@code task} is already pending.
+     */
+    void schedule(@NonNull Runnable task) {
+        if (!mTasks.contains(task)) {
+            mTasks.add(task);
+        }
+        maybeAddIdleHandler();
+    }
+
+    /** Runs every pending task now, including the ones they schedule. */
+    void runPendingTasks() {
+        Runnable task;
+        while ((task = mTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    /** Returns whether any task is waiting to run. */
+    boolean hasPendingTasks() {
+        return !mTasks.isEmpty();
+    }
+
+    @Override
+    public boolean queueIdle() {
+        Runnable task = mTasks.poll();
+        if (task != null) {
+            task.run();
+        }
+        // Stay registered for the next idle slot while work remains.
+        mIdleHandlerAdded = !mTasks.isEmpty() && mHost.isAttachedToWindow();
+        return mIdleHandlerAdded;
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View view) {
+        // Not resolved when created, as views can be created off the thread that draws them.
+        mQueue = mHost.getHandler().getLooper().getQueue();
+        if (mFirstFrameDrawn) {
+            maybeAddIdleHandler();
+        } else {
+            mHost.getViewTreeObserver().addOnPreDrawListener(this);
+        }
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View view) {
+        // Tasks stay pending until the host is attached again.
+        mHost.getViewTreeObserver().removeOnPreDrawListener(this);
+        mHost.removeCallbacks(mOnFirstFrameDrawn);
+        if (mIdleHandlerAdded) {
+            mQueue.removeIdleHandler(this);
+            mIdleHandlerAdded = false;
+        }
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        mHost.getViewTreeObserver().removeOnPreDrawListener(this);
+        mHost.post(mOnFirstFrameDrawn);
+        return true;
+    }
+
+    private void onFirstFrameDrawn() {
+        mFirstFrameDrawn = true;
+        maybeAddIdleHandler();
+    }
+
+    private void maybeAddIdleHandler() {
+        if (mFirstFrameDrawn && !mIdleHandlerAdded && !mTasks.isEmpty()
+                && mHost.isAttachedToWindow()) {
+            mQueue.addIdleHandler(this);
+            mIdleHandlerAdded = true;
+        }
+    }
+}
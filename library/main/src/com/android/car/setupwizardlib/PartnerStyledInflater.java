@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.Button;
+import android.widget.ImageView;
+import android.widget.RelativeLayout;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.setupwizardlib.partner.PartnerConfig;
+import com.android.car.setupwizardlib.partner.PartnerConfigSnapshot;
+
+/**
+ * Inflates the toolbar already styled with the partner configuration: the title bar, back button
+ * and toolbar buttons are styled as they are created, before they are added to their parent, so
+ * that they are laid out once with their final style instead of being restyled view by view
+ * after inflation.
+ *
+ * <p>Partner values are only known at runtime and can't be compiled into theme attributes, so
+ * they are applied by a {@link LayoutInflater.Factory2} rather than a theme overlay.
+ */
+final class PartnerStyledInflater implements LayoutInflater.Factory2 {
+
+    /** Tag of the single level toolbar; switch labels need a constant. */
+    private static final String FLAT_TOOLBAR =
+            "com.android.car.setupwizardlib.CarSetupWizardToolbar";
+
+    private final PartnerConfigSnapshot mSnapshot;
+    @Nullable private final ButtonStyle.Variant mButtonVariant;
+    /** The factory of the inflater this one was cloned from, e.g. the one of AppCompat. */
+    @Nullable private final LayoutInflater.Factory2 mDelegate;
+
+    private PartnerStyledInflater(PartnerConfigSnapshot snapshot,
+            @Nullable ButtonStyle.Variant buttonVariant,
+            @Nullable LayoutInflater.Factory2 delegate) {
+        mSnapshot = snapshot;
+        mButtonVariant = buttonVariant;
+        mDelegate = delegate;
+    }
+
+    /**
+     * Returns an inflater of {@code context} that styles the views it creates with {@code
+     * snapshot}. Buttons are styled as {@code buttonVariant}, or left as is if it is {@code null}.
+     *
+     * <p>Create a new inflater for every inflation, so that it styles with the current snapshot.
+     */
+    @NonNull
+    static LayoutInflater create(@NonNull Context context, @NonNull PartnerConfigSnapshot snapshot,
+            @Nullable ButtonStyle.Variant buttonVariant) {
+        LayoutInflater inflater = LayoutInflater.from(context).cloneInContext(context);
+        // A clone keeps the factories of the original and runs them after the one set here.
+        inflater.setFactory2(
+                new PartnerStyledInflater(snapshot, buttonVariant, inflater.getFactory2()));
+        return inflater;
+    }
+
+    @Override
+    @Nullable
+    public View onCreateView(@Nullable View parent, @NonNull String name,
+            @NonNull Context context, @NonNull AttributeSet attrs) {
+        switch (name) {
+            case "Button":
+                if (mButtonVariant == null) {
+                    return null;
+                }
+                Button button = (Button) createView(parent, name, context, attrs);
+                ButtonStyle.get(mSnapshot, mButtonVariant).applyAttributes(button);
+                return button;
+            case "ImageView":
+                ImageView imageView = (ImageView) createView(parent, name, context, attrs);
+                if (imageView.getId() == R.id.back_button) {
+                    styleBackButton(imageView, mSnapshot);
+                }
+                return imageView;
+            case "RelativeLayout":
+            case FLAT_TOOLBAR:
+                View view = createView(parent, name, context, attrs);
+                if (view.getId() == R.id.application_bar) {
+                    styleTitleBar(view, mSnapshot);
+                }
+                return view;
+            default:
+                // Leave every other view to the inflater.
+                return null;
+        }
+    }
+
+    @Override
+    @Nullable
+    public View onCreateView(
+            @NonNull String name, @NonNull Context context, @NonNull AttributeSet attrs) {
+        return onCreateView(null, name, context, attrs);
+    }
+
+    private View createView(
+            @Nullable View parent, String name, Context context, AttributeSet attrs) {
+        View view = mDelegate == null ? null : mDelegate.onCreateView(parent, name, context, attrs);
+        if (view != null) {
+            return view;
+        }
+        switch (name) {
+            case "Button":
+                return new Button(context, attrs);
+            case "ImageView":
+                return new ImageView(context, attrs);
+            case "RelativeLayout":
+                return new RelativeLayout(context, attrs);
+            case FLAT_TOOLBAR:
+                return new CarSetupWizardToolbar(context, attrs);
+            default:
+                throw new IllegalArgumentException("Unexpected view " + name);
+        }
+    }
+
+    /** Sets the partner back icon of {@code snapshot} on {@code backButton}, if there is one. */
+    static void styleBackButton(
+            @NonNull ImageView backButton, @NonNull PartnerConfigSnapshot snapshot) {
+        Drawable drawable = snapshot.getDrawable(PartnerConfig.CONFIG_TOOLBAR_BUTTON_ICON_BACK);
+        if (drawable != null) {
+            backButton.setImageDrawable(drawable);
+        }
+    }
+
+    /** Sets the partner toolbar color of {@code snapshot} on {@code titleBar}, if there is one. */
+    static void styleTitleBar(@NonNull View titleBar, @NonNull PartnerConfigSnapshot snapshot) {
+        int toolbarBgColor = snapshot.getColor(PartnerConfig.CONFIG_TOOLBAR_BG_COLOR);
+        if (toolbarBgColor != 0) {
+            titleBar.setBackgroundColor(toolbarBgColor);
+        }
+    }
+}
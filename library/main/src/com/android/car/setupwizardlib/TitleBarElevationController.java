@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import android.animation.ValueAnimator;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Raises the title bar of a {@link CarSetupWizardBaseLayout} to cast a drop shadow while its
+ * content is scrolled, and lowers it back when the content returns to the top.
+ *
+ * <p>Elevation only changes when the content crosses the top, through a single animator that is
+ * reused and cancelled on every change, so scroll events that don't cross it cost nothing.
+ */
+public final class TitleBarElevationController {
+
+    private static final int ANIMATION_DURATION_MS = 100;
+
+    private final View mTitleBar;
+    private final float mElevation;
+    private final ValueAnimator mAnimator = new ValueAnimator();
+    private final ViewTreeObserver.OnScrollChangedListener mOnScrollChangedListener =
+            this::updateElevation;
+
+    @Nullable private View mScrollingView;
+    private boolean mElevated;
+
+    TitleBarElevationController(@NonNull View titleBar, float elevation) {
+        mTitleBar = titleBar;
+        mElevation = elevation;
+        mElevated = titleBar.getElevation() > 0;
+        mAnimator.setDuration(ANIMATION_DURATION_MS);
+        mAnimator.addUpdateListener(
+                animation -> mTitleBar.setElevation((float) animation.getAnimatedValue()));
+    }
+
+    /**
+     * Drives the title bar elevation from the scroll position of {@code scrollingView}, replacing
+     * any view attached before. Listens through the view tree, so listeners set on the view itself
+     * are left alone.
+     */
+    public void attachTo(@NonNull View scrollingView) {
+        detach();
+        mScrollingView = scrollingView;
+        scrollingView.getViewTreeObserver().addOnScrollChangedListener(mOnScrollChangedListener);
+        setElevated(scrollingView.canScrollVertically(-1), /* animate= */ false);
+    }
+
+    /** Stops following the scrolling view attached with {@link #attachTo}, if any. */
+    public void detach() {
+        if (mScrollingView != null) {
+            ViewTreeObserver observer = mScrollingView.getViewTreeObserver();
+            if (observer.isAlive()) {
+                observer.removeOnScrollChangedListener(mOnScrollChangedListener);
+            }
+            mScrollingView = null;
+        }
+    }
+
+    /** Returns whether the title bar is, or is animating to being, elevated. */
+    public boolean isElevated() {
+        return mElevated;
+    }
+
+    /**
+     * Raises or lowers the title bar, cancelling any ongoing animation. An animation can be used
+     * in cases where a direct elevation change would be too jarring.
+     */
+    public void setElevated(boolean elevated, boolean animate) {
+        float targetElevation = elevated ? mElevation : 0f;
+        boolean changed = elevated != mElevated;
+        mElevated = elevated;
+        if (!animate) {
+            mAnimator.cancel();
+            mTitleBar.setElevation(targetElevation);
+            return;
+        }
+        if (!changed
+                && (mAnimator.isRunning() || mTitleBar.getElevation() == targetElevation)) {
+            // Already there, or on the way.
+            return;
+        }
+        mAnimator.cancel();
+        mAnimator.setFloatValues(mTitleBar.getElevation(), targetElevation);
+        mAnimator.start();
+    }
+
+    private void updateElevation() {
+        // Called for a scroll anywhere in the window, which only matters if it crossed the top.
+        if (mScrollingView != null && mScrollingView.canScrollVertically(-1) != mElevated) {
+            setElevated(!mElevated, /* animate= */ true);
+        }
+    }
+}
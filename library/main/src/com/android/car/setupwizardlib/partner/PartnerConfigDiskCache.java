@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.core.content.pm.PackageInfoCompat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Persists the partner overlay config returned by the Car Setup Wizard provider so it can be
+ * served on the next process start without a blocking provider call. The cached config is only
+ * valid while every overlay package it refers to keeps the same version code and last update
+ * time, and while the app requests the same keys from the provider.
+ *
+ * <p>File layout, all values big-endian:
+ * <pre>
+ *   int   magic
+ *   int   format version
+ *   int   requested key count, followed by each requested key as a string
+ *   int   package count, followed by (string name, long versionCode, long lastUpdateTime)
+ *   int   entry count, followed by (string key, string package, string name, int resourceId)
+ * </pre>
+ * where each string is an unsigned short byte length followed by its UTF-8 bytes.
+ */
+final class PartnerConfigDiskCache {
+
+    private static final String TAG = PartnerConfigDiskCache.class.getSimpleName();
+
+    @VisibleForTesting static final String FILE_NAME = "suw_partner_config.bin";
+
+    private static final int MAGIC = 0x53555750; // "SUWP"
+    private static final int FORMAT_VERSION = 2;
+
+    private final File mFile;
+    /** The keys requested from the provider, which may have filtered the config by them. */
+    private final Set<String> mRequestedKeys = new TreeSet<>();
+
+    PartnerConfigDiskCache(
+            @NonNull Context context, @NonNull Set<PartnerConfig> requestedConfigs) {
+        mFile = new File(context.getFilesDir(), FILE_NAME);
+        for (PartnerConfig partnerConfig : requestedConfigs) {
+            mRequestedKeys.add(partnerConfig.getResourceName());
+        }
+    }
+
+    /**
+     * Returns the cached partner config, or {@code null} if there is no cache, it was requested
+     * with different keys or any of the overlay packages it was resolved against has been updated
+     * since.
+     */
+    @Nullable
+    PartnerConfigTable read(@NonNull Context context) {
+        if (!mFile.exists()) {
+            return null;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r");
+                FileChannel channel = file.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                Log.w(TAG, "Ignoring partner config cache with unknown format");
+                return null;
+            }
+
+            int requestedKeyCount = buffer.getInt();
+            Set<String> requestedKeys = new TreeSet<>();
+            for (int i = 0; i < requestedKeyCount; i++) {
+                requestedKeys.add(readString(buffer));
+            }
+            if (!requestedKeys.equals(mRequestedKeys)) {
+                return null;
+            }
+
+            PackageManager packageManager = context.getPackageManager();
+            int packageCount = buffer.getInt();
+            for (int i = 0; i < packageCount; i++) {
+                String packageName = readString(buffer);
+                long versionCode = buffer.getLong();
+                long lastUpdateTime = buffer.getLong();
+                PackageInfo packageInfo = packageManager.getPackageInfo(packageName, 0);
+                if (PackageInfoCompat.getLongVersionCode(packageInfo) != versionCode
+                        || packageInfo.lastUpdateTime != lastUpdateTime) {
+                    return null;
+                }
+            }
+
+            PartnerConfigTable.Builder result = new PartnerConfigTable.Builder();
+            int entryCount = buffer.getInt();
+            for (int i = 0; i < entryCount; i++) {
+                String key = readString(buffer);
+                String packageName = readString(buffer);
+                String resourceName = readString(buffer);
+                int resourceId = buffer.getInt();
+                // Skip the keys this version doesn't know.
+                PartnerConfig partnerConfig = PartnerConfigTable.getPartnerConfig(key);
+                if (partnerConfig != null) {
+                    result.put(partnerConfig, packageName, resourceName, resourceId);
+                }
+            }
+            return result.build();
+        } catch (PackageManager.NameNotFoundException exception) {
+            // An overlay package was removed, the cached entries can no longer be resolved.
+            return null;
+        } catch (IOException | BufferUnderflowException exception) {
+            Log.w(TAG, "Fail to read partner config cache", exception);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the given partner config to disk, keyed by the current versions of the overlay
+     * packages it refers to. This performs file I/O and should not be called on the main thread.
+     */
+    void write(@NonNull Context context, @Nullable PartnerConfigTable config) {
+        if (config == null || config.size() == 0) {
+            delete();
+            return;
+        }
+
+        File tempFile = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+
+            out.writeInt(mRequestedKeys.size());
+            for (String requestedKey : mRequestedKeys) {
+                writeString(out, requestedKey);
+            }
+
+            Map<String, PackageInfo> packages = new TreeMap<>();
+            PackageManager packageManager = context.getPackageManager();
+            for (PartnerConfig partnerConfig : PartnerConfig.values()) {
+                String packageName = config.getPackageName(partnerConfig);
+                if (packageName != null && !packages.containsKey(packageName)) {
+                    packages.put(packageName, packageManager.getPackageInfo(packageName, 0));
+                }
+            }
+            out.writeInt(packages.size());
+            for (PackageInfo packageInfo : packages.values()) {
+                writeString(out, packageInfo.packageName);
+                out.writeLong(PackageInfoCompat.getLongVersionCode(packageInfo));
+                out.writeLong(packageInfo.lastUpdateTime);
+            }
+
+            out.writeInt(config.size());
+            for (PartnerConfig partnerConfig : PartnerConfig.values()) {
+                if (config.contains(partnerConfig)) {
+                    writeString(out, partnerConfig.getResourceName());
+                    writeString(out, config.getPackageName(partnerConfig));
+                    writeString(out, config.getResourceName(partnerConfig));
+                    out.writeInt(config.getResourceId(partnerConfig));
+                }
+            }
+            out.flush();
+
+            // Concurrent writers each get their own temp file, so only complete files are
+            // renamed into place.
+            tempFile = File.createTempFile(FILE_NAME, ".tmp", mFile.getParentFile());
+            try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+                bytes.writeTo(fileOut);
+                fileOut.getFD().sync();
+            }
+            if (!tempFile.renameTo(mFile)) {
+                Log.w(TAG, "Fail to commit partner config cache");
+                tempFile.delete();
+            }
+        } catch (PackageManager.NameNotFoundException | IOException exception) {
+            Log.w(TAG, "Fail to write partner config cache", exception);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /** Removes the cached partner config, if any. */
+    void delete() {
+        mFile.delete();
+    }
+
+    /**
+     * Returns whether the two partner configs resolve every key to the same resource, counting no
+     * config as an empty one.
+     */
+    static boolean isSameConfig(
+            @Nullable PartnerConfigTable first, @Nullable PartnerConfigTable second) {
+        return (first == null ? PartnerConfigTable.EMPTY : first)
+                .equals(second == null ? PartnerConfigTable.EMPTY : second);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -16,14 +16,26 @@
 
 package com.android.car.setupwizardlib.partner;
 
+import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks;
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
+import android.content.pm.ProviderInfo;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.content.res.Resources.NotFoundException;
+import android.database.ContentObserver;
+import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
 import android.util.Log;
 import android.util.TypedValue;
 
@@ -32,7 +44,21 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
-import java.util.EnumMap;
+import com.android.car.setupwizardlib.R;
+import com.android.car.setupwizardlib.util.TypefaceCache;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /** The helper reads and caches the partner configurations from Car Setup Wizard. */
 public class PartnerConfigHelper {
@@ -46,10 +72,52 @@ public class PartnerConfigHelper {
     static final String SUW_GET_PARTNER_CONFIG_METHOD = "getOverlayConfig";
     private static volatile PartnerConfigHelper sInstance = null;
 
-    @VisibleForTesting Bundle mResultBundle = null;
+    /** Index of the changes resources of every type depend on, after those of each type. */
+    private static final int ALL_TYPES = PartnerConfig.ResourceType.values().length;
+
+    @VisibleForTesting volatile PartnerConfigTable mConfigTable = null;
+
+    private volatile ResolvedValues mResolvedValues = new ResolvedValues();
 
+    /**
+     * Values the provider resolved once for every wizard process, or {@code null} if it didn't
+     * publish any for the current partner config.
+     *
+     * @see PartnerConfigProtocol#createSharedValues
+     */
     @VisibleForTesting
-    final EnumMap<PartnerConfig, Object> mPartnerResourceCache = new EnumMap<>(PartnerConfig.class);
+    volatile SharedPartnerValues mSharedValues;
+
+    /**
+     * {@code Resources} of the overlay packages, so a page worth of partner values costs at most
+     * one {@link PackageManager#getResourcesForApplication(String)} per package.
+     */
+    @VisibleForTesting
+    final ConcurrentHashMap<String, Resources> mPackageResources = new ConcurrentHashMap<>();
+
+    private final Context mAppContext;
+    /** The configs asked from the provider, see {@link #initAsync(Context, Set)}. */
+    private final Set<PartnerConfig> mRequestedConfigs;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final PartnerConfigDiskCache mDiskCache;
+
+    @VisibleForTesting final PartnerConfigMetrics mMetrics = new PartnerConfigMetrics();
+
+    private final CountDownLatch mReadyLatch = new CountDownLatch(1);
+    private final AtomicInteger mAwaitCount = new AtomicInteger();
+    private final AtomicInteger mDeadlineExceededCount = new AtomicInteger();
+    private final List<OnPartnerConfigChangedListener> mListeners = new CopyOnWriteArrayList<>();
+
+    /** Listener notified on the main thread when the partner configuration changes. */
+    public interface OnPartnerConfigChangedListener {
+
+        /**
+         * Called after the partner configuration changed.
+         *
+         * @param changedConfigs The {@code PartnerConfig}s whose value may have changed
+         */
+        void onPartnerConfigChanged(@NonNull Set<PartnerConfig> changedConfigs);
+    }
 
     /** Factory method to get an instance */
     public static PartnerConfigHelper get(@NonNull Context context) {
@@ -63,6 +131,112 @@ public class PartnerConfigHelper {
         return sInstance;
     }
 
+    /**
+     * Starts reading the partner configuration on a background thread and returns immediately.
+     * Call this from {@code Application#onCreate} so the provider call overlaps with process
+     * start. Later calls to {@link #get(Context)} return the same instance without blocking; use
+     * {@link #awaitPartnerConfig(long)} to wait for the result with a deadline.
+     */
+    public static PartnerConfigHelper initAsync(@NonNull Context context) {
+        return initAsync(context, EnumSet.allOf(PartnerConfig.class));
+    }
+
+    /**
+     * Like {@link #initAsync(Context)}, but only asks the provider for the given configs so it
+     * serializes no more than the app needs. Every other config reads as not found. Has no effect
+     * if the instance already exists.
+     *
+     * @param context The context of the application
+     * @param requestedConfigs The configs the app reads, e.g. only the toolbar configs for apps
+     *     that only use the compat layout
+     */
+    public static PartnerConfigHelper initAsync(
+            @NonNull Context context, @NonNull Set<PartnerConfig> requestedConfigs) {
+        if (sInstance == null) {
+            synchronized (PartnerConfigHelper.class) {
+                if (sInstance == null) {
+                    sInstance = new PartnerConfigHelper(
+                            context, /* async= */ true, requestedConfigs);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Waits until the partner configuration has been read or the given deadline expires. Values
+     * read before the configuration is ready fall back to their defaults; registered
+     * {@link OnPartnerConfigChangedListener}s are notified once it arrives.
+     *
+     * @param timeoutMs The maximum time to wait in milliseconds
+     * @return {@code true} if the partner configuration is ready
+     */
+    public boolean awaitPartnerConfig(long timeoutMs) {
+        if (mReadyLatch.getCount() == 0) {
+            return true;
+        }
+
+        mAwaitCount.incrementAndGet();
+        try {
+            if (mReadyLatch.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        mDeadlineExceededCount.incrementAndGet();
+        Log.w(TAG, "Partner config not ready after " + timeoutMs + "ms, using defaults");
+        return false;
+    }
+
+    /** Returns whether the partner configuration has been read. */
+    public boolean isPartnerConfigReady() {
+        return mReadyLatch.getCount() == 0;
+    }
+
+    /** Returns how many times a caller had to wait for the partner configuration. */
+    public int getAwaitCount() {
+        return mAwaitCount.get();
+    }
+
+    /** Returns how many times waiting for the partner configuration hit the deadline. */
+    public int getDeadlineExceededCount() {
+        return mDeadlineExceededCount.get();
+    }
+
+    /** Registers a listener to be notified when the partner configuration changes. */
+    public void addOnPartnerConfigChangedListener(
+            @NonNull OnPartnerConfigChangedListener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    /** Unregisters a listener added by {@link #addOnPartnerConfigChangedListener}. */
+    public void removeOnPartnerConfigChangedListener(
+            @NonNull OnPartnerConfigChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Writes the state of the partner configuration along with lookup counters and latency
+     * histograms. Host apps can call this from {@code Activity#dump} or {@code Service#dump} to
+     * include it in {@code dumpsys}.
+     *
+     * @param writer The writer to dump to
+     */
+    public void dump(@NonNull PrintWriter writer) {
+        PartnerConfigTable configTable = mConfigTable;
+        writer.println("PartnerConfigHelper:");
+        writer.println("  ready=" + isPartnerConfigReady()
+                + " awaits=" + getAwaitCount()
+                + " deadlinesExceeded=" + getDeadlineExceededCount());
+        writer.println("  configuredKeys=" + (configTable == null ? 0 : configTable.size())
+                + " overlayPackages=" + mPackageResources.keySet()
+                + " listeners=" + mListeners.size());
+        mMetrics.dump(writer, "  ");
+    }
+
     /**
      * Returns the color of given {@code partnerConfig}, or 0 if the given {@code partnerConfig}
      * is not found. If the {@code ResourceType} of the given {@code partnerConfig} is not color,
@@ -77,8 +251,22 @@ public class PartnerConfigHelper {
             throw new IllegalArgumentException("Not a color resource");
         }
 
-        if (mPartnerResourceCache.containsKey(partnerConfig)) {
-            return (int) mPartnerResourceCache.get(partnerConfig);
+        PartnerResourceCache cache = getPartnerResourceCache(partnerConfig);
+        int state = cache.getState(partnerConfig);
+        if (state == PartnerResourceCache.STATE_PRESENT) {
+            mMetrics.recordHit(partnerConfig);
+            return cache.getColor(partnerConfig);
+        } else if (state == PartnerResourceCache.STATE_MISSING) {
+            mMetrics.recordNegativeHit(partnerConfig);
+            return 0;
+        }
+
+        mMetrics.recordMiss(partnerConfig);
+        SharedPartnerValues sharedValues = getSharedValues(partnerConfig);
+        if (sharedValues != null) {
+            int result = sharedValues.getColor(partnerConfig);
+            cache.putColor(partnerConfig, result);
+            return result;
         }
 
         int result = 0;
@@ -87,20 +275,24 @@ public class PartnerConfigHelper {
             ResourceEntry resourceEntry = getResourceEntryFromKey(resourceName);
             if (resourceEntry == null) {
                 Log.w(TAG, "Resource not found: " + resourceName);
+                cache.putMissing(partnerConfig);
                 return 0;
             }
 
             Resources resource = getResourcesByPackageName(context, resourceEntry.getPackageName());
+            long decodeStart = PartnerConfigMetrics.now();
             result = resource.getColor(resourceEntry.getResourceId(), null);
-            mPartnerResourceCache.put(partnerConfig, result);
+            mMetrics.recordDecode(partnerConfig, decodeStart);
+            cache.putColor(partnerConfig, result);
         } catch (PackageManager.NameNotFoundException exception) {
             Log.e(TAG, exception.getMessage());
+            cache.putMissing(partnerConfig);
         }
         return result;
     }
 
     /**
-     * Returns the {@code Drawable} of given {@code partnerConfig}, or {@code null} if the given
+     * Returns a new {@code Drawable} of given {@code partnerConfig}, or {@code null} if the given
      * {@code partnerConfig} is not found. If the {@code ResourceType} of the given {@code
      * resourceConfig} is not drawable, IllegalArgumentException will be thrown.
      *
@@ -113,31 +305,56 @@ public class PartnerConfigHelper {
             throw new IllegalArgumentException("Not a drawable resource");
         }
 
-        if (mPartnerResourceCache.containsKey(partnerConfig)) {
-            return (Drawable) mPartnerResourceCache.get(partnerConfig);
+        PartnerResourceCache cache = getPartnerResourceCache(partnerConfig);
+        int state = cache.getState(partnerConfig);
+        if (state == PartnerResourceCache.STATE_PRESENT) {
+            mMetrics.recordHit(partnerConfig);
+            return ((Drawable.ConstantState) cache.getObject(partnerConfig)).newDrawable();
+        } else if (state == PartnerResourceCache.STATE_MISSING) {
+            mMetrics.recordNegativeHit(partnerConfig);
+            return null;
         }
 
+        mMetrics.recordMiss(partnerConfig);
         Drawable result = null;
         try {
             String resourceName = partnerConfig.getResourceName();
             ResourceEntry resourceEntry = getResourceEntryFromKey(resourceName);
             if (resourceEntry == null) {
                 Log.w(TAG, "Resource not found: " + resourceName);
+                cache.putMissing(partnerConfig);
                 return null;
             }
             Resources resource = getResourcesByPackageName(context, resourceEntry.getPackageName());
 
             // for @null
+            long decodeStart = PartnerConfigMetrics.now();
             TypedValue outValue = new TypedValue();
             resource.getValue(resourceEntry.getResourceId(), outValue, true);
             if (outValue.type == TypedValue.TYPE_REFERENCE && outValue.data == 0) {
+                cache.putMissing(partnerConfig);
                 return result;
             }
 
-            result = resource.getDrawable(resourceEntry.getResourceId(), null);
-            mPartnerResourceCache.put(partnerConfig, result);
+            result = decodeDrawable(resource, partnerConfig, resourceEntry.getResourceId());
+            mMetrics.recordDecode(partnerConfig, decodeStart);
+            // Cache the constant state rather than the drawable, so every caller gets its own
+            // drawable and can't corrupt the bounds or state of another caller's.
+            Drawable.ConstantState constantState = result.getConstantState();
+            if (constantState != null) {
+                // The drawable may depend on more changes than its resource, which moves it to
+                // another cache.
+                onDrawableDecoded(mResolvedValues, constantState);
+                Object cached = getPartnerResourceCache(partnerConfig)
+                        .putObjectIfAbsent(partnerConfig, constantState);
+                if (cached != constantState) {
+                    // A background preload decoded it first.
+                    result = ((Drawable.ConstantState) cached).newDrawable();
+                }
+            }
         } catch (PackageManager.NameNotFoundException | NotFoundException exception) {
             Log.e(TAG, exception.getMessage());
+            cache.putMissing(partnerConfig);
         }
         return result;
     }
@@ -156,23 +373,34 @@ public class PartnerConfigHelper {
             throw new IllegalArgumentException("Not a string resource");
         }
 
-        if (mPartnerResourceCache.containsKey(partnerConfig)) {
-            return (String) mPartnerResourceCache.get(partnerConfig);
+        PartnerResourceCache cache = getPartnerResourceCache(partnerConfig);
+        int state = cache.getState(partnerConfig);
+        if (state == PartnerResourceCache.STATE_PRESENT) {
+            mMetrics.recordHit(partnerConfig);
+            return (String) cache.getObject(partnerConfig);
+        } else if (state == PartnerResourceCache.STATE_MISSING) {
+            mMetrics.recordNegativeHit(partnerConfig);
+            return null;
         }
 
+        mMetrics.recordMiss(partnerConfig);
         String result = null;
         try {
             String resourceName = partnerConfig.getResourceName();
             ResourceEntry resourceEntry = getResourceEntryFromKey(resourceName);
             if (resourceEntry == null) {
                 Log.w(TAG, "Resource not found: " + resourceName);
+                cache.putMissing(partnerConfig);
                 return null;
             }
             Resources resource = getResourcesByPackageName(context, resourceEntry.getPackageName());
+            long decodeStart = PartnerConfigMetrics.now();
             result = resource.getString(resourceEntry.getResourceId());
-            mPartnerResourceCache.put(partnerConfig, result);
+            mMetrics.recordDecode(partnerConfig, decodeStart);
+            cache.putObject(partnerConfig, result);
         } catch (PackageManager.NameNotFoundException exception) {
             Log.e(TAG, exception.getMessage());
+            cache.putMissing(partnerConfig);
         }
         return result;
     }
@@ -202,8 +430,22 @@ public class PartnerConfigHelper {
             throw new IllegalArgumentException("Not a dimension resource");
         }
 
-        if (mPartnerResourceCache.containsKey(partnerConfig)) {
-            return (float) mPartnerResourceCache.get(partnerConfig);
+        PartnerResourceCache cache = getPartnerResourceCache(partnerConfig);
+        int state = cache.getState(partnerConfig);
+        if (state == PartnerResourceCache.STATE_PRESENT) {
+            mMetrics.recordHit(partnerConfig);
+            return cache.getDimension(partnerConfig);
+        } else if (state == PartnerResourceCache.STATE_MISSING) {
+            mMetrics.recordNegativeHit(partnerConfig);
+            return defaultValue;
+        }
+
+        mMetrics.recordMiss(partnerConfig);
+        SharedPartnerValues sharedValues = getSharedValues(partnerConfig);
+        if (sharedValues != null) {
+            float result = sharedValues.getDimension(partnerConfig);
+            cache.putDimension(partnerConfig, result);
+            return result;
         }
 
         float result = defaultValue;
@@ -212,13 +454,17 @@ public class PartnerConfigHelper {
             ResourceEntry resourceEntry = getResourceEntryFromKey(resourceName);
             if (resourceEntry == null) {
                 Log.w(TAG, "Resource not found: " + resourceName);
+                cache.putMissing(partnerConfig);
                 return defaultValue;
             }
             Resources resource = getResourcesByPackageName(context, resourceEntry.getPackageName());
+            long decodeStart = PartnerConfigMetrics.now();
             result = resource.getDimension(resourceEntry.getResourceId());
-            mPartnerResourceCache.put(partnerConfig, result);
+            mMetrics.recordDecode(partnerConfig, decodeStart);
+            cache.putDimension(partnerConfig, result);
         } catch (PackageManager.NameNotFoundException exception) {
             Log.e(TAG, exception.getMessage());
+            cache.putMissing(partnerConfig);
         }
         return result;
     }
@@ -238,8 +484,22 @@ public class PartnerConfigHelper {
             throw new IllegalArgumentException("Not a boolean resource");
         }
 
-        if (mPartnerResourceCache.containsKey(partnerConfig)) {
-            return (boolean) mPartnerResourceCache.get(partnerConfig);
+        PartnerResourceCache cache = getPartnerResourceCache(partnerConfig);
+        int state = cache.getState(partnerConfig);
+        if (state == PartnerResourceCache.STATE_PRESENT) {
+            mMetrics.recordHit(partnerConfig);
+            return cache.getBoolean(partnerConfig);
+        } else if (state == PartnerResourceCache.STATE_MISSING) {
+            mMetrics.recordNegativeHit(partnerConfig);
+            return defaultValue;
+        }
+
+        mMetrics.recordMiss(partnerConfig);
+        SharedPartnerValues sharedValues = getSharedValues(partnerConfig);
+        if (sharedValues != null) {
+            boolean result = sharedValues.getBoolean(partnerConfig);
+            cache.putBoolean(partnerConfig, result);
+            return result;
         }
 
         boolean result = defaultValue;
@@ -248,55 +508,729 @@ public class PartnerConfigHelper {
             ResourceEntry resourceEntry = getResourceEntryFromKey(resourceName);
             if (resourceEntry == null) {
                 Log.w(TAG, "Resource not found: " + resourceName);
+                cache.putMissing(partnerConfig);
                 return defaultValue;
             }
             Resources resource = getResourcesByPackageName(context, resourceEntry.getPackageName());
+            long decodeStart = PartnerConfigMetrics.now();
             result = resource.getBoolean(resourceEntry.getResourceId());
-            mPartnerResourceCache.put(partnerConfig, result);
+            mMetrics.recordDecode(partnerConfig, decodeStart);
+            cache.putBoolean(partnerConfig, result);
         } catch (PackageManager.NameNotFoundException exception) {
             Log.e(TAG, exception.getMessage());
+            cache.putMissing(partnerConfig);
         }
         return result;
     }
 
-    private void getPartnerConfigBundle(Context context) {
-        if (mResultBundle == null) {
+    /**
+     * Returns a {@link PartnerConfigSnapshot} holding every {@link PartnerConfig} resolved in a
+     * single pass against one {@code Resources} instance. The snapshot is built on first use and
+     * shared by all callers afterwards.
+     *
+     * @param context The context of client activity
+     */
+    @NonNull
+    public PartnerConfigSnapshot getSnapshot(@NonNull Context context) {
+        // Read the resolved values before the config they were resolved from; see
+        // setConfigTable.
+        ResolvedValues resolvedValues = mResolvedValues;
+        Configuration config = mAppContext.getResources().getConfiguration();
+        synchronized (resolvedValues) {
+            Keyed<PartnerConfigSnapshot> snapshot = findMatching(resolvedValues.mSnapshots, config);
+            if (snapshot != null) {
+                mMetrics.recordSnapshotHit();
+                return snapshot.mValue;
+            }
+        }
+
+        PartnerConfigTable configTable = mConfigTable;
+        if (configTable == null) {
+            // Not cached, the configuration may still arrive from an asynchronous init.
+            return PartnerConfigSnapshot.EMPTY;
+        }
+        mMetrics.recordSnapshotMiss();
+        PartnerConfigSnapshot snapshot = resolveSnapshot(context, configTable);
+        // Only key the snapshot once its drawables widened the changes they depend on.
+        ResourceConfigKey configKey = ResourceConfigKey.of(
+                config, /* type= */ null, getChangingConfigurations(resolvedValues, null));
+        synchronized (resolvedValues) {
+            Keyed<PartnerConfigSnapshot> existing =
+                    findMatching(resolvedValues.mSnapshots, config);
+            if (existing != null) {
+                return existing.mValue;
+            }
+            resolvedValues.mSnapshots.add(new Keyed<>(configKey, snapshot));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the cache of values of the type of {@code partnerConfig} resolved under the current
+     * configuration. Resources of overlay packages follow the application's configuration, so
+     * that's what the cache is keyed by, up to the changes the resources depend on.
+     */
+    @VisibleForTesting
+    PartnerResourceCache getPartnerResourceCache(@NonNull PartnerConfig partnerConfig) {
+        ResolvedValues resolvedValues = mResolvedValues;
+        PartnerConfig.ResourceType type = partnerConfig.getResourceType();
+        Configuration config = mAppContext.getResources().getConfiguration();
+        Keyed<PartnerResourceCache> lastCache = resolvedValues.mLastCaches.get(type.ordinal());
+        if (lastCache != null && lastCache.mKey.matches(config)) {
+            return lastCache.mValue;
+        }
+
+        int changingConfigurations = getChangingConfigurations(resolvedValues, type);
+        synchronized (resolvedValues) {
+            Keyed<PartnerResourceCache> cache = null;
+            for (Keyed<PartnerResourceCache> candidate : resolvedValues.mCaches) {
+                if (candidate.mKey.getType() == type && candidate.mKey.matches(config)) {
+                    cache = candidate;
+                    break;
+                }
+            }
+            if (cache == null) {
+                cache = new Keyed<>(ResourceConfigKey.of(config, type, changingConfigurations),
+                        new PartnerResourceCache());
+                resolvedValues.mCaches.add(cache);
+            }
+            resolvedValues.mLastCaches.set(type.ordinal(), cache);
+            return cache.mValue;
+        }
+    }
+
+    /**
+     * Returns the configuration changes the resources of {@code type}, or of every type if it is
+     * {@code null}, depend on in the current partner config.
+     */
+    private int getChangingConfigurations(
+            ResolvedValues resolvedValues, @Nullable PartnerConfig.ResourceType type) {
+        int[] changingConfigurations = resolvedValues.mChangingConfigurations;
+        if (changingConfigurations == null) {
+            changingConfigurations = computeChangingConfigurations(mConfigTable);
+            synchronized (resolvedValues) {
+                if (resolvedValues.mChangingConfigurations == null) {
+                    resolvedValues.mChangingConfigurations = changingConfigurations;
+                } else {
+                    changingConfigurations = resolvedValues.mChangingConfigurations;
+                }
+            }
+        }
+        return changingConfigurations[type == null ? ALL_TYPES : type.ordinal()];
+    }
+
+    /**
+     * Returns the configuration changes the resources in {@code configTable} depend on, by
+     * resource type ordinal and then of every type at {@link #ALL_TYPES}. Only reads the resource
+     * values, without decoding them.
+     */
+    private int[] computeChangingConfigurations(@Nullable PartnerConfigTable configTable) {
+        int[] changingConfigurations = new int[ALL_TYPES + 1];
+        if (configTable == null) {
+            return changingConfigurations;
+        }
+        for (PartnerConfig partnerConfig : PartnerConfig.values()) {
+            if (!configTable.contains(partnerConfig)) {
+                continue;
+            }
             try {
-                Uri contentUri =
-                        new Uri.Builder()
-                                .scheme(ContentResolver.SCHEME_CONTENT)
-                                .authority(SUW_AUTHORITY)
-                                .appendPath(SUW_GET_PARTNER_CONFIG_METHOD)
-                                .build();
-                mResultBundle = context.getContentResolver().call(
-                        contentUri,
-                        SUW_GET_PARTNER_CONFIG_METHOD,
-                        /* arg= */ null,
-                        /* extras= */ null);
-                mPartnerResourceCache.clear();
-            } catch (IllegalArgumentException exception) {
-                Log.w(TAG, "Fail to get config from suw provider");
+                Resources resource = getResourcesByPackageName(
+                        mAppContext, configTable.getPackageName(partnerConfig));
+                TypedValue value = new TypedValue();
+                resource.getValue(configTable.getResourceId(partnerConfig), value,
+                        /* resolveRefs= */ true);
+                int changing = ResourceConfigKey.getChangingConfigurations(value);
+                changingConfigurations[partnerConfig.getResourceType().ordinal()] |= changing;
+                changingConfigurations[ALL_TYPES] |= changing;
+            } catch (PackageManager.NameNotFoundException | NotFoundException exception) {
+                // It won't resolve to anything under any configuration either.
             }
         }
+        return changingConfigurations;
+    }
+
+    /**
+     * Widens the configuration changes drawables depend on with those {@code state} turned out to
+     * depend on, e.g. through the colors it references, and drops the drawables cached under the
+     * narrower ones.
+     */
+    private void onDrawableDecoded(ResolvedValues resolvedValues, Drawable.ConstantState state) {
+        PartnerConfig.ResourceType type = PartnerConfig.ResourceType.DRAWABLE;
+        int drawable = type.ordinal();
+        int changing = state.getChangingConfigurations();
+        if ((changing & ~getChangingConfigurations(resolvedValues, type)) == 0) {
+            return;
+        }
+        synchronized (resolvedValues) {
+            if ((changing & ~resolvedValues.mChangingConfigurations[drawable]) == 0) {
+                return;
+            }
+            int[] widened = resolvedValues.mChangingConfigurations.clone();
+            widened[drawable] |= changing;
+            widened[ALL_TYPES] |= changing;
+            resolvedValues.mChangingConfigurations = widened;
+            resolvedValues.mCaches.removeIf(cache -> cache.mKey.getType() == type);
+            resolvedValues.mLastCaches.set(drawable, null);
+            resolvedValues.mSnapshots.clear();
+        }
+    }
+
+    @Nullable
+    private static <T> Keyed<T> findMatching(List<Keyed<T>> values, Configuration config) {
+        for (Keyed<T> value : values) {
+            if (value.mKey.matches(config)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the drawable of {@code partnerConfig} no larger than the toolbar draws it.
+     *
+     * @see PartnerDrawableDecoder
+     */
+    private Drawable decodeDrawable(
+            Resources resource, PartnerConfig partnerConfig, int resourceId) {
+        Resources appResources = mAppContext.getResources();
+        return PartnerDrawableDecoder.decode(
+                resource,
+                resourceId,
+                PartnerDrawableDecoder.getMaxWidth(appResources, partnerConfig),
+                PartnerDrawableDecoder.getMaxHeight(appResources, partnerConfig));
+    }
+
+    /**
+     * Decodes the requested drawable configs among {@code partnerConfigs} into the cache, loads
+     * the button typeface into the {@link TypefaceCache} and builds the snapshot layouts read from
+     * those drawables, so that layouts only attach resources that are ready. Must not be called on
+     * the main thread.
+     */
+    @VisibleForTesting
+    void preload(Set<PartnerConfig> partnerConfigs) {
+        for (PartnerConfig partnerConfig : partnerConfigs) {
+            if (!mRequestedConfigs.contains(partnerConfig)) {
+                continue;
+            }
+            if (partnerConfig.getResourceType() == PartnerConfig.ResourceType.DRAWABLE) {
+                getDrawable(mAppContext, partnerConfig);
+            } else if (partnerConfig == PartnerConfig.CONFIG_TOOLBAR_BUTTON_FONT_FAMILY) {
+                String fontFamily = getString(mAppContext, partnerConfig);
+                if (!TextUtils.isEmpty(fontFamily)) {
+                    TypefaceCache.get(fontFamily, Typeface.NORMAL);
+                }
+            }
+        }
+        getSnapshot(mAppContext);
+    }
+
+    /**
+     * Preloads everything the toolbar needs at startup: the typefaces of the buttons, then the
+     * partner resources.
+     */
+    private void preloadAtStartup() {
+        preloadTypefaces();
+        preload(EnumSet.allOf(PartnerConfig.class));
+    }
+
+    /**
+     * Loads the partner button typeface and the font the library's button styles use, which
+     * buttons otherwise wait for. Must not be called on the main thread.
+     */
+    private void preloadTypefaces() {
+        if (mRequestedConfigs.contains(PartnerConfig.CONFIG_TOOLBAR_BUTTON_FONT_FAMILY)) {
+            String fontFamily =
+                    getString(mAppContext, PartnerConfig.CONFIG_TOOLBAR_BUTTON_FONT_FAMILY);
+            if (!TextUtils.isEmpty(fontFamily)) {
+                TypefaceCache.get(fontFamily, Typeface.NORMAL);
+            }
+        }
+        TypefaceCache.getFont(mAppContext, R.font.sans_medium);
+    }
+
+    /**
+     * Returns the values shared by the provider if they hold {@code partnerConfig} resolved under
+     * the current configuration, or {@code null} if it has to be resolved in this process.
+     */
+    @Nullable
+    private SharedPartnerValues getSharedValues(PartnerConfig partnerConfig) {
+        SharedPartnerValues sharedValues = mSharedValues;
+        if (sharedValues == null || !sharedValues.contains(
+                partnerConfig, mAppContext.getResources().getConfiguration())) {
+            return null;
+        }
+        mMetrics.recordSharedValueRead();
+        return sharedValues;
+    }
+
+    private PartnerConfigSnapshot resolveSnapshot(
+            Context context, PartnerConfigTable configTable) {
+
+        PartnerConfig[] partnerConfigs = PartnerConfig.values();
+        boolean[] present = new boolean[partnerConfigs.length];
+        int[] ints = new int[partnerConfigs.length];
+        float[] floats = new float[partnerConfigs.length];
+        Object[] objects = new Object[partnerConfigs.length];
+
+        String resourcePackageName = null;
+        Resources resource = null;
+        for (PartnerConfig partnerConfig : partnerConfigs) {
+            if (!configTable.contains(partnerConfig)) {
+                continue;
+            }
+
+            int index = partnerConfig.ordinal();
+            if (partnerConfig.getResourceType() == PartnerConfig.ResourceType.DRAWABLE) {
+                // Takes the state preload() decoded in the background, or decodes it into the
+                // cache so getDrawable() won't decode it again.
+                Drawable.ConstantState state = getDrawableState(context, partnerConfig);
+                if (state != null) {
+                    objects[index] = state;
+                    present[index] = true;
+                }
+                continue;
+            }
+
+            SharedPartnerValues sharedValues = getSharedValues(partnerConfig);
+            if (sharedValues != null) {
+                switch (partnerConfig.getResourceType()) {
+                    case COLOR:
+                        ints[index] = sharedValues.getColor(partnerConfig);
+                        break;
+                    case DIMENSION:
+                        floats[index] = sharedValues.getDimension(partnerConfig);
+                        break;
+                    case BOOLEAN:
+                        ints[index] = sharedValues.getBoolean(partnerConfig) ? 1 : 0;
+                        break;
+                    default:
+                        throw new IllegalStateException("Not a primitive resource");
+                }
+                present[index] = true;
+                continue;
+            }
+
+            int resourceId = configTable.getResourceId(partnerConfig);
+            String packageName = configTable.getPackageName(partnerConfig);
+            try {
+                // Overlays normally keep every entry in one package, so this only resolves the
+                // Resources once per snapshot.
+                if (resource == null || !packageName.equals(resourcePackageName)) {
+                    resourcePackageName = packageName;
+                    resource = getResourcesByPackageName(context, resourcePackageName);
+                }
+
+                long decodeStart = PartnerConfigMetrics.now();
+                switch (partnerConfig.getResourceType()) {
+                    case COLOR:
+                        ints[index] = resource.getColor(resourceId, null);
+                        break;
+                    case DIMENSION:
+                        floats[index] = resource.getDimension(resourceId);
+                        break;
+                    case BOOLEAN:
+                        ints[index] = resource.getBoolean(resourceId) ? 1 : 0;
+                        break;
+                    case STRING:
+                        objects[index] = resource.getString(resourceId);
+                        break;
+                    default:
+                        throw new IllegalStateException("Drawables are resolved above");
+                }
+                mMetrics.recordDecode(partnerConfig, decodeStart);
+                present[index] = true;
+            } catch (PackageManager.NameNotFoundException exception) {
+                resource = null;
+                Log.e(TAG, exception.getMessage());
+            } catch (NotFoundException exception) {
+                Log.e(TAG, exception.getMessage());
+            }
+        }
+        return new PartnerConfigSnapshot(present, ints, floats, objects);
+    }
+
+    /**
+     * Returns the constant state of the drawable {@code partnerConfig} resolves to, from the cache
+     * or decoded into it, or {@code null} if it resolves to none.
+     */
+    @Nullable
+    private Drawable.ConstantState getDrawableState(Context context, PartnerConfig partnerConfig) {
+        PartnerResourceCache cache = getPartnerResourceCache(partnerConfig);
+        if (cache.getState(partnerConfig) == PartnerResourceCache.STATE_PRESENT) {
+            return (Drawable.ConstantState) cache.getObject(partnerConfig);
+        }
+        Drawable drawable = getDrawable(context, partnerConfig);
+        return drawable == null ? null : drawable.getConstantState();
+    }
+
+    private void getPartnerConfigBundle(Context context) {
+        if (mConfigTable == null) {
+            ProviderReply reply = queryPartnerConfigBundle(context);
+            setConfigTable(reply.mConfigTable, reply.mSharedValues);
+        }
+    }
+
+    /**
+     * Replaces the partner config and the values the provider shared for it, and invalidates
+     * everything resolved from the previous one, including the tombstones recorded while no config
+     * was available yet.
+     */
+    private synchronized void setConfigTable(
+            @Nullable PartnerConfigTable configTable, @Nullable SharedPartnerValues sharedValues) {
+        // Publish the config and shared values before the new resolved values so nothing
+        // resolved from the old config can land in them.
+        mSharedValues = sharedValues;
+        mConfigTable = configTable;
+        invalidateResolvedValues();
+    }
+
+    /**
+     * Replaces the values the provider shared, unless the partner config was replaced since it was
+     * read as {@code configTable}; the values would belong to the other config then.
+     */
+    private synchronized void setSharedValues(
+            @Nullable PartnerConfigTable configTable, @Nullable SharedPartnerValues sharedValues) {
+        if (mConfigTable == configTable) {
+            mSharedValues = sharedValues;
+        }
+    }
+
+    /**
+     * Drops every value resolved so far, under any configuration, keeping the current partner
+     * config.
+     */
+    private synchronized void invalidateResolvedValues() {
+        mResolvedValues = new ResolvedValues();
+    }
+
+    private void notifyPartnerConfigChanged(Set<PartnerConfig> changedConfigs) {
+        for (OnPartnerConfigChangedListener listener : mListeners) {
+            listener.onPartnerConfigChanged(changedConfigs);
+        }
+    }
+
+    private static Uri getPartnerConfigUri() {
+        return new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(SUW_AUTHORITY)
+                .appendPath(SUW_GET_PARTNER_CONFIG_METHOD)
+                .build();
+    }
+
+    /**
+     * Reads the partner config from the provider, preferring the compact format and falling back
+     * to the {@code Bundle} protocol for providers that don't support it, along with the values
+     * the provider shared, if any.
+     *
+     * @see PartnerConfigProtocol
+     */
+    @NonNull
+    private ProviderReply queryPartnerConfigBundle(Context context) {
+        long start = PartnerConfigMetrics.now();
+        try {
+            Bundle reply = context.getContentResolver().call(
+                    getPartnerConfigUri(),
+                    SUW_GET_PARTNER_CONFIG_METHOD,
+                    /* arg= */ null,
+                    PartnerConfigProtocol.createRequestExtras(mRequestedConfigs));
+            SharedPartnerValues sharedValues = PartnerConfigProtocol.readSharedValues(reply);
+            PartnerConfigTable configTable;
+            if (PartnerConfigProtocol.hasCompactConfig(reply)) {
+                configTable = PartnerConfigProtocol.readCompactConfig(reply);
+                if (configTable == null) {
+                    Log.w(TAG, "Unreadable config from suw provider");
+                    return new ProviderReply(/* configTable= */ null, /* sharedValues= */ null);
+                }
+            } else {
+                configTable = PartnerConfigTable.fromBundle(reply);
+            }
+            // Providers predating the requested keys reply with every key, and the unrequested
+            // ones must read as not found.
+            if (configTable != null) {
+                configTable = configTable.retainAll(mRequestedConfigs);
+            }
+            return new ProviderReply(configTable, sharedValues);
+        } catch (IllegalArgumentException exception) {
+            Log.w(TAG, "Fail to get config from suw provider");
+            return new ProviderReply(/* configTable= */ null, /* sharedValues= */ null);
+        } finally {
+            mMetrics.mProviderCallLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Queries the provider in the background and, if anything changed, applies the result on the
+     * main thread and notifies listeners of the changed configs. Configs served from one of the
+     * {@code updatedPackages} count as changed even if they still point at the same resource,
+     * since the package contents may differ.
+     */
+    private void reloadPartnerConfigBundle(Context appContext, Set<String> updatedPackages) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            PartnerConfigTable currentTable = mConfigTable;
+            ProviderReply reply = queryPartnerConfigBundle(appContext);
+            PartnerConfigTable configTable = reply.mConfigTable;
+            if (configTable == null) {
+                // Keep serving the current config if the provider is unavailable.
+                return;
+            }
+
+            if (!updatedPackages.isEmpty()
+                    || !PartnerConfigDiskCache.isSameConfig(currentTable, configTable)) {
+                mDiskCache.write(appContext, configTable);
+            }
+            Set<PartnerConfig> changedConfigs =
+                    getChangedConfigs(currentTable, configTable, updatedPackages);
+            if (changedConfigs.isEmpty()) {
+                // The values resolved so far are still valid; the shared ones equal them.
+                setSharedValues(currentTable, reply.mSharedValues);
+                return;
+            }
+            mMainHandler.post(() -> {
+                setConfigTable(configTable, reply.mSharedValues);
+                // Decode the new drawables before listeners attach them.
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+                    preload(changedConfigs);
+                    mMainHandler.post(() -> notifyPartnerConfigChanged(changedConfigs));
+                });
+            });
+        });
+    }
+
+    /**
+     * Returns the configs that resolve to a different resource in {@code newTable} than in {@code
+     * oldTable}, or that are served from one of the {@code updatedPackages}.
+     */
+    @VisibleForTesting
+    static Set<PartnerConfig> getChangedConfigs(@Nullable PartnerConfigTable oldTable,
+            @Nullable PartnerConfigTable newTable, Set<String> updatedPackages) {
+        if (oldTable == null) {
+            oldTable = PartnerConfigTable.EMPTY;
+        }
+        if (newTable == null) {
+            newTable = PartnerConfigTable.EMPTY;
+        }
+        Set<PartnerConfig> changedConfigs = EnumSet.noneOf(PartnerConfig.class);
+        for (PartnerConfig partnerConfig : PartnerConfig.values()) {
+            String packageName = newTable.getPackageName(partnerConfig);
+            if (!oldTable.isSameEntry(newTable, partnerConfig)
+                    || (packageName != null && updatedPackages.contains(packageName))) {
+                changedConfigs.add(partnerConfig);
+            }
+        }
+        return changedConfigs;
+    }
+
+    /** Returns whether the current partner config refers to resources of the given package. */
+    private boolean isOverlayPackage(Context context, String packageName) {
+        PartnerConfigTable configTable = mConfigTable;
+        if (configTable != null && configTable.refersToPackage(packageName)) {
+            return true;
+        }
+        // An update of the provider itself may change which resources it hands out.
+        ProviderInfo providerInfo =
+                context.getPackageManager().resolveContentProvider(SUW_AUTHORITY, 0);
+        return providerInfo != null && packageName.equals(providerInfo.packageName);
     }
 
     private Resources getResourcesByPackageName(Context context, String packageName)
             throws PackageManager.NameNotFoundException {
-        PackageManager manager = context.getPackageManager();
-        return manager.getResourcesForApplication(packageName);
+        Resources resources = mPackageResources.get(packageName);
+        if (resources == null) {
+            PackageManager manager = context.getPackageManager();
+            long start = PartnerConfigMetrics.now();
+            resources = manager.getResourcesForApplication(packageName);
+            mMetrics.mGetResourcesLatency.recordSince(start);
+            mPackageResources.put(packageName, resources);
+        }
+        return resources;
+    }
+
+    /**
+     * Drops the cached {@code Resources} of the given package, along with every value resolved
+     * from them.
+     */
+    private void invalidatePackageResources(String packageName) {
+        if (mPackageResources.remove(packageName) != null) {
+            synchronized (this) {
+                // The provider may not have republished its shared values yet.
+                mSharedValues = null;
+                invalidateResolvedValues();
+            }
+        }
+    }
+
+    private void registerPartnerConfigObservers(Context appContext) {
+        // Providers call ContentResolver#notifyChange on the config uri when the config changes.
+        appContext.getContentResolver().registerContentObserver(
+                getPartnerConfigUri(),
+                /* notifyForDescendants= */ true,
+                new ContentObserver(mMainHandler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        reloadPartnerConfigBundle(appContext, Collections.emptySet());
+                    }
+                });
+
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addDataScheme("package");
+        appContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Uri data = intent.getData();
+                if (data == null) {
+                    return;
+                }
+                String packageName = data.getSchemeSpecificPart();
+                invalidatePackageResources(packageName);
+                if (isOverlayPackage(appContext, packageName)) {
+                    reloadPartnerConfigBundle(appContext, Collections.singleton(packageName));
+                }
+            }
+        }, packageFilter);
+
+        appContext.registerComponentCallbacks(new ComponentCallbacks() {
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+                // Resolved values are keyed by configuration and stay valid for when it switches
+                // back, only the Resources need to pick up the new configuration.
+                mPackageResources.clear();
+            }
+
+            @Override
+            public void onLowMemory() {
+            }
+        });
     }
 
     private ResourceEntry getResourceEntryFromKey(String resourceName) {
-        if (mResultBundle == null) {
+        PartnerConfigTable configTable = mConfigTable;
+        PartnerConfig partnerConfig = PartnerConfigTable.getPartnerConfig(resourceName);
+        if (configTable == null || partnerConfig == null) {
             return null;
         }
-        return ResourceEntry.fromBundle(mResultBundle.getBundle(resourceName));
+        return configTable.getResourceEntry(partnerConfig);
     }
 
     private PartnerConfigHelper(Context context) {
+        this(context, /* async= */ false, EnumSet.allOf(PartnerConfig.class));
+    }
+
+    private PartnerConfigHelper(
+            Context context, boolean async, Set<PartnerConfig> requestedConfigs) {
+        Context appContext = context.getApplicationContext();
+        mAppContext = appContext;
+        // EnumSet.copyOf throws for an empty set that isn't an EnumSet.
+        Set<PartnerConfig> requested = EnumSet.noneOf(PartnerConfig.class);
+        requested.addAll(requestedConfigs);
+        mRequestedConfigs = Collections.unmodifiableSet(requested);
+        mDiskCache = new PartnerConfigDiskCache(appContext, mRequestedConfigs);
+        registerPartnerConfigObservers(appContext);
+
+        if (async) {
+            // Even the disk cache costs file and package manager I/O, keep it off the caller.
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> initInBackground(appContext));
+            return;
+        }
+
+        // The caller blocks on the config anyway; the disk cache spares it the provider call.
+        PartnerConfigTable cachedTable = mDiskCache.read(appContext);
+        if (cachedTable != null) {
+            setConfigTable(cachedTable, /* sharedValues= */ null);
+            // The caller styles its buttons next, start their typefaces before anything else.
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(this::preloadTypefaces);
+            mReadyLatch.countDown();
+            // Decode in the background what the first layouts would otherwise decode inline.
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(this::preloadAtStartup);
+            reloadPartnerConfigBundle(appContext, Collections.emptySet());
+            return;
+        }
+
         getPartnerConfigBundle(context);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(this::preloadTypefaces);
+        mReadyLatch.countDown();
+        PartnerConfigTable configTable = mConfigTable;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            preloadAtStartup();
+            mDiskCache.write(appContext, configTable);
+        });
     }
 
+    /**
+     * Reads the partner config for {@link #initAsync}, from the disk cache if it is still valid
+     * and from the provider otherwise. Must not be called on the main thread.
+     */
+    private void initInBackground(Context appContext) {
+        PartnerConfigTable cachedTable = mDiskCache.read(appContext);
+        if (cachedTable != null) {
+            setConfigTable(cachedTable, /* sharedValues= */ null);
+            mReadyLatch.countDown();
+            preloadAtStartup();
+            mMainHandler.post(
+                    () -> notifyPartnerConfigChanged(EnumSet.allOf(PartnerConfig.class)));
+            reloadPartnerConfigBundle(appContext, Collections.emptySet());
+            return;
+        }
+
+        ProviderReply reply = queryPartnerConfigBundle(appContext);
+        setConfigTable(reply.mConfigTable, reply.mSharedValues);
+        // Layouts waiting for the config attach the drawables and typefaces right away, so load
+        // them here rather than on the main thread.
+        preloadAtStartup();
+        mReadyLatch.countDown();
+        mMainHandler.post(() -> notifyPartnerConfigChanged(EnumSet.allOf(PartnerConfig.class)));
+        mDiskCache.write(appContext, reply.mConfigTable);
+    }
+
+    /**
+     * Everything resolved from one partner config, under every configuration seen so far.
+     * It is never cleared in place; it is invalidated as a whole by replacing the instance, so a
+     * resolution still in flight can only land in the discarded one.
+     */
+    private static final class ResolvedValues {
+        /** The caches of every resource type, one per configuration seen. Guarded by this. */
+        final List<Keyed<PartnerResourceCache>> mCaches = new ArrayList<>();
+        /** The snapshots, one per configuration seen. Guarded by this. */
+        final List<Keyed<PartnerConfigSnapshot>> mSnapshots = new ArrayList<>();
+
+        /** The cache last used per resource type, checked before searching {@link #mCaches}. */
+        final AtomicReferenceArray<Keyed<PartnerResourceCache>> mLastCaches =
+                new AtomicReferenceArray<>(PartnerConfig.ResourceType.values().length);
+
+        /**
+         * The configuration changes the resources depend on, or {@code null} until computed.
+         * Written under the lock of this.
+         *
+         * @see PartnerConfigHelper#computeChangingConfigurations
+         */
+        @Nullable volatile int[] mChangingConfigurations;
+    }
+
+    /** A provider reply: the partner config and the values shared along with it. */
+    private static final class ProviderReply {
+        @Nullable final PartnerConfigTable mConfigTable;
+        @Nullable final SharedPartnerValues mSharedValues;
+
+        ProviderReply(
+                @Nullable PartnerConfigTable configTable,
+                @Nullable SharedPartnerValues sharedValues) {
+            mConfigTable = configTable;
+            mSharedValues = sharedValues;
+        }
+    }
+
+    /** A value resolved under the configuration of its key. */
+    private static final class Keyed<T> {
+        final ResourceConfigKey mKey;
+        final T mValue;
+
+        Keyed(ResourceConfigKey key, T value) {
+            mKey = key;
+            mValue = value;
+        }
+    }
 
     @VisibleForTesting
     static synchronized void resetForTesting() {
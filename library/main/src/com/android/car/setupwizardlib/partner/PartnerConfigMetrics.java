@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms describing what resolving partner resources costs. All methods
+ * are thread safe and lock free, so they can be called on every lookup.
+ */
+final class PartnerConfigMetrics {
+
+    private static final int SIZE = PartnerConfig.values().length;
+
+    private final AtomicLongArray mHits = new AtomicLongArray(SIZE);
+    private final AtomicLongArray mMisses = new AtomicLongArray(SIZE);
+    private final AtomicLongArray mNegativeHits = new AtomicLongArray(SIZE);
+    private final AtomicLong mSnapshotHits = new AtomicLong();
+    private final AtomicLong mSnapshotMisses = new AtomicLong();
+    private final AtomicLong mSharedValueReads = new AtomicLong();
+
+    /** Latency of the {@code ContentResolver#call} reading the partner config. */
+    final LatencyHistogram mProviderCallLatency = new LatencyHistogram();
+    /** Latency of {@code PackageManager#getResourcesForApplication} for an overlay package. */
+    final LatencyHistogram mGetResourcesLatency = new LatencyHistogram();
+    /** Latency of resolving a single partner resource, per {@link PartnerConfig.ResourceType}. */
+    private final LatencyHistogram[] mDecodeLatencies =
+            new LatencyHistogram[PartnerConfig.ResourceType.values().length];
+
+    PartnerConfigMetrics() {
+        for (int i = 0; i < mDecodeLatencies.length; i++) {
+            mDecodeLatencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /** Records a lookup of {@code partnerConfig} served from the cache. */
+    void recordHit(@NonNull PartnerConfig partnerConfig) {
+        mHits.incrementAndGet(partnerConfig.ordinal());
+    }
+
+    /** Records a lookup of {@code partnerConfig} that had to resolve the resource. */
+    void recordMiss(@NonNull PartnerConfig partnerConfig) {
+        mMisses.incrementAndGet(partnerConfig.ordinal());
+    }
+
+    /** Records a lookup of {@code partnerConfig} answered by a cached tombstone. */
+    void recordNegativeHit(@NonNull PartnerConfig partnerConfig) {
+        mNegativeHits.incrementAndGet(partnerConfig.ordinal());
+    }
+
+    /** Records a snapshot request served from the cache. */
+    void recordSnapshotHit() {
+        mSnapshotHits.incrementAndGet();
+    }
+
+    /** Records a snapshot request that had to resolve every partner resource. */
+    void recordSnapshotMiss() {
+        mSnapshotMisses.incrementAndGet();
+    }
+
+    /** Records a lookup that missed the cache but was read from the provider's shared values. */
+    void recordSharedValueRead() {
+        mSharedValueReads.incrementAndGet();
+    }
+
+    /** Records how long resolving {@code partnerConfig} took, started at {@code startNanos}. */
+    void recordDecode(@NonNull PartnerConfig partnerConfig, long startNanos) {
+        mDecodeLatencies[partnerConfig.getResourceType().ordinal()].recordSince(startNanos);
+    }
+
+    @VisibleForTesting
+    long getHitCount(@NonNull PartnerConfig partnerConfig) {
+        return mHits.get(partnerConfig.ordinal());
+    }
+
+    @VisibleForTesting
+    long getMissCount(@NonNull PartnerConfig partnerConfig) {
+        return mMisses.get(partnerConfig.ordinal());
+    }
+
+    @VisibleForTesting
+    long getNegativeHitCount(@NonNull PartnerConfig partnerConfig) {
+        return mNegativeHits.get(partnerConfig.ordinal());
+    }
+
+    /** Returns the current time for passing to the {@code record*} methods as a start time. */
+    static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /** Writes the counters of every config that was looked up, followed by the histograms. */
+    void dump(@NonNull PrintWriter writer, @NonNull String prefix) {
+        writer.println(String.format(Locale.US, "%sSnapshots (hits/misses): %d/%d",
+                prefix, mSnapshotHits.get(), mSnapshotMisses.get()));
+        writer.println(String.format(Locale.US, "%sShared value reads: %d",
+                prefix, mSharedValueReads.get()));
+        writer.println(prefix + "Lookups (hits/misses/negative hits):");
+        for (PartnerConfig partnerConfig : PartnerConfig.values()) {
+            int index = partnerConfig.ordinal();
+            long hits = mHits.get(index);
+            long misses = mMisses.get(index);
+            long negativeHits = mNegativeHits.get(index);
+            if (hits + misses + negativeHits == 0) {
+                continue;
+            }
+            writer.println(String.format(Locale.US, "%s  %s: %d/%d/%d",
+                    prefix, partnerConfig.name(), hits, misses, negativeHits));
+        }
+
+        mProviderCallLatency.dump(writer, prefix, "ContentResolver#call");
+        mGetResourcesLatency.dump(writer, prefix, "getResourcesForApplication");
+        for (PartnerConfig.ResourceType type : PartnerConfig.ResourceType.values()) {
+            mDecodeLatencies[type.ordinal()].dump(
+                    writer, prefix, "decode " + type.name().toLowerCase(Locale.US));
+        }
+    }
+
+    /**
+     * A histogram of latencies with power-of-two microsecond buckets: bucket {@code i} counts
+     * latencies below {@code 2^i} microseconds, the last one everything above.
+     */
+    static final class LatencyHistogram {
+
+        private static final int BUCKET_COUNT = 22; // Up to ~2 seconds.
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mTotalNanos = new AtomicLong();
+        private final AtomicLong mMaxNanos = new AtomicLong();
+
+        /** Records the time elapsed since {@code startNanos}, as returned by {@link #now()}. */
+        void recordSince(long startNanos) {
+            record(now() - startNanos);
+        }
+
+        @VisibleForTesting
+        void record(long nanos) {
+            long micros = nanos / 1000;
+            int bucket = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+            mBuckets.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+            mCount.incrementAndGet();
+            mTotalNanos.addAndGet(nanos);
+            long max;
+            do {
+                max = mMaxNanos.get();
+            } while (nanos > max && !mMaxNanos.compareAndSet(max, nanos));
+        }
+
+        @VisibleForTesting
+        long getCount() {
+            return mCount.get();
+        }
+
+        void dump(PrintWriter writer, String prefix, String name) {
+            long count = mCount.get();
+            if (count == 0) {
+                writer.println(prefix + name + ": no samples");
+                return;
+            }
+            writer.println(String.format(Locale.US, "%s%s: count=%d avg=%dus max=%dus",
+                    prefix, name, count, mTotalNanos.get() / count / 1000,
+                    mMaxNanos.get() / 1000));
+            StringBuilder buckets = new StringBuilder(prefix).append("  ");
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long bucketCount = mBuckets.get(i);
+                if (bucketCount == 0) {
+                    continue;
+                }
+                buckets.append(i == BUCKET_COUNT - 1 ? ">=" : "<")
+                        .append(1L << (i == BUCKET_COUNT - 1 ? i - 1 : i))
+                        .append("us:")
+                        .append(bucketCount)
+                        .append(' ');
+            }
+            writer.println(buckets);
+        }
+    }
+}
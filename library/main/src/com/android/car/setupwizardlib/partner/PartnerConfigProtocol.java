@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The protocol between the Car Setup Wizard partner provider and {@link PartnerConfigHelper}.
+ *
+ * <p>Clients pass {@link #EXTRA_COMPACT_FORMAT_VERSION} in the extras of the {@code
+ * getOverlayConfig} call. A provider that supports the compact format replies with the encoded
+ * config in a read-only {@code SharedMemory} under {@link #KEY_COMPACT_CONFIG_SHARED_MEMORY} or a
+ * mappable {@link ParcelFileDescriptor} under {@link #KEY_COMPACT_CONFIG_FD}, which the client
+ * maps instead of unparcelling a {@code Bundle} per key. Older providers ignore the extra and reply
+ * with the {@code Bundle} protocol, one {@link ResourceEntry#toBundle()} per key.
+ *
+ * <p>Clients also pass {@link #EXTRA_SHARED_VALUES_FORMAT_VERSION}. Providers can resolve the
+ * colors, dimensions and booleans once per boot with {@link #createSharedValues} and return the
+ * same read-only region under {@link #KEY_SHARED_VALUES_SHARED_MEMORY} in every reply; each client
+ * process then reads those values from the region instead of resolving them again.
+ *
+ * <p>Compact format, all values big-endian:
+ * <pre>
+ *   int   magic
+ *   int   format version
+ *   int   string count, followed by each string as an unsigned short byte length and its UTF-8
+ *         bytes; keys, package names and resource names are each stored once
+ *   int   entry count, followed by the entries packed as
+ *         (int key index, int package index, int resource name index, int resource id)
+ * </pre>
+ */
+public final class PartnerConfigProtocol {
+
+    private static final String TAG = PartnerConfigProtocol.class.getSimpleName();
+
+    /**
+     * Call extra holding the protocol version the client speaks. Version 1 adds {@link
+     * #EXTRA_REQUESTED_KEYS}; clients that don't send this extra expect every key.
+     */
+    public static final String EXTRA_PROTOCOL_VERSION = "protocolVersion";
+
+    /** The protocol version sent in {@link #EXTRA_PROTOCOL_VERSION}. */
+    public static final int PROTOCOL_VERSION = 1;
+
+    /**
+     * Call extra holding the {@link PartnerConfigKey}s the client reads, as a string array.
+     * Providers may leave out every other key from the reply; if the extra is absent, the client
+     * reads every key.
+     */
+    public static final String EXTRA_REQUESTED_KEYS = "requestedKeys";
+
+    /** Call extra holding the highest compact format version the client can read. */
+    public static final String EXTRA_COMPACT_FORMAT_VERSION = "compactFormatVersion";
+
+    /** Reply key of a read-only {@code SharedMemory} holding the compact config. */
+    public static final String KEY_COMPACT_CONFIG_SHARED_MEMORY = "compactConfigSharedMemory";
+
+    /** Reply key of a {@link ParcelFileDescriptor} of a mappable file with the compact config. */
+    public static final String KEY_COMPACT_CONFIG_FD = "compactConfigFd";
+
+    /** The compact format version written by {@link #encode(Bundle)}. */
+    public static final int COMPACT_FORMAT_VERSION = 1;
+
+    /** Call extra holding the highest shared values format version the client can read. */
+    public static final String EXTRA_SHARED_VALUES_FORMAT_VERSION = "sharedValuesFormatVersion";
+
+    /** Reply key of a read-only {@code SharedMemory} created by {@link #createSharedValues}. */
+    public static final String KEY_SHARED_VALUES_SHARED_MEMORY = "sharedValuesSharedMemory";
+
+    /** The shared values format version written by {@link #createSharedValues}. */
+    public static final int SHARED_VALUES_FORMAT_VERSION = 2;
+
+    private static final String SHARED_VALUES_NAME = "suw_partner_values";
+
+    private static final int MAGIC = 0x53555743; // "SUWC"
+    private static final int INTS_PER_ENTRY = 4;
+
+    /**
+     * Returns the extras of a {@code getOverlayConfig} call requesting the compact format, the
+     * shared values where supported and, unless every config is requested, only the given
+     * configs.
+     */
+    @NonNull
+    static Bundle createRequestExtras(@NonNull Set<PartnerConfig> requestedConfigs) {
+        Bundle extras = new Bundle();
+        extras.putInt(EXTRA_PROTOCOL_VERSION, PROTOCOL_VERSION);
+        extras.putInt(EXTRA_COMPACT_FORMAT_VERSION, COMPACT_FORMAT_VERSION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            extras.putInt(EXTRA_SHARED_VALUES_FORMAT_VERSION, SHARED_VALUES_FORMAT_VERSION);
+        }
+        if (requestedConfigs.size() < PartnerConfig.values().length) {
+            String[] requestedKeys = new String[requestedConfigs.size()];
+            int i = 0;
+            for (PartnerConfig partnerConfig : requestedConfigs) {
+                requestedKeys[i++] = partnerConfig.getResourceName();
+            }
+            extras.putStringArray(EXTRA_REQUESTED_KEYS, requestedKeys);
+        }
+        return extras;
+    }
+
+    /**
+     * Returns whether the client that sent the given call {@code extras} reads the given {@code
+     * key}. Providers can use this to leave keys out of the reply.
+     */
+    public static boolean isKeyRequested(@Nullable Bundle extras, @NonNull String key) {
+        String[] requestedKeys =
+                extras == null ? null : extras.getStringArray(EXTRA_REQUESTED_KEYS);
+        if (requestedKeys == null) {
+            return true;
+        }
+        for (String requestedKey : requestedKeys) {
+            if (key.equals(requestedKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encodes a config in the {@code Bundle} protocol into the compact format. Providers write the
+     * result to a {@code SharedMemory} or a file and return it in the reply.
+     */
+    @NonNull
+    public static byte[] encode(@NonNull Bundle resultBundle) {
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> stringIndexes = new HashMap<>();
+        List<int[]> entries = new ArrayList<>();
+        for (String key : resultBundle.keySet()) {
+            ResourceEntry entry = ResourceEntry.fromBundle(resultBundle.getBundle(key));
+            if (entry == null
+                    || entry.getPackageName() == null
+                    || entry.getResourceName() == null) {
+                continue;
+            }
+            entries.add(new int[] {
+                    indexOf(key, strings, stringIndexes),
+                    indexOf(entry.getPackageName(), strings, stringIndexes),
+                    indexOf(entry.getResourceName(), strings, stringIndexes),
+                    entry.getResourceId()});
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(COMPACT_FORMAT_VERSION);
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(utf8.length);
+                out.write(utf8);
+            }
+            out.writeInt(entries.size());
+            for (int[] entry : entries) {
+                for (int value : entry) {
+                    out.writeInt(value);
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException exception) {
+            // Writing to memory doesn't throw.
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Returns whether the given provider reply holds a compact config, readable or not.
+     */
+    static boolean hasCompactConfig(@Nullable Bundle reply) {
+        return reply != null
+                && (reply.containsKey(KEY_COMPACT_CONFIG_SHARED_MEMORY)
+                        || reply.containsKey(KEY_COMPACT_CONFIG_FD));
+    }
+
+    /**
+     * Returns the config decoded from the compact config in the given provider reply, or {@code
+     * null} if the reply holds no readable compact config. Closes and removes any shared memory or
+     * file descriptor found in the reply.
+     */
+    @Nullable
+    static PartnerConfigTable readCompactConfig(@Nullable Bundle reply) {
+        if (reply == null) {
+            return null;
+        }
+
+        PartnerConfigTable result = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            SharedMemory sharedMemory = reply.getParcelable(KEY_COMPACT_CONFIG_SHARED_MEMORY);
+            if (sharedMemory != null) {
+                result = readSharedMemory(sharedMemory);
+            }
+        }
+
+        ParcelFileDescriptor fd = reply.getParcelable(KEY_COMPACT_CONFIG_FD);
+        if (fd != null) {
+            try (FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(fd);
+                    FileChannel channel = in.getChannel()) {
+                if (result == null) {
+                    result = decode(
+                            channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+            } catch (IOException exception) {
+                Log.w(TAG, "Fail to map compact partner config", exception);
+            }
+        }
+
+        // Leave only Bundle protocol entries in the reply.
+        reply.remove(KEY_COMPACT_CONFIG_SHARED_MEMORY);
+        reply.remove(KEY_COMPACT_CONFIG_FD);
+        return result;
+    }
+
+    /**
+     * Resolves the colors, dimensions and booleans of a config in the {@code Bundle} protocol
+     * under the configuration of {@code context} and writes them to a read-only {@code
+     * SharedMemory}, or returns {@code null} if it can't be created. Providers create it once, for
+     * instance per boot and configuration, and put it in every reply under {@link
+     * #KEY_SHARED_VALUES_SHARED_MEMORY}.
+     */
+    @Nullable
+    @RequiresApi(Build.VERSION_CODES.O_MR1)
+    public static SharedMemory createSharedValues(
+            @NonNull Context context, @NonNull Bundle resultBundle) {
+        byte[] bytes = SharedPartnerValues.encode(context, resultBundle);
+        SharedMemory sharedMemory = null;
+        try {
+            sharedMemory = SharedMemory.create(SHARED_VALUES_NAME, bytes.length);
+            ByteBuffer buffer = sharedMemory.mapReadWrite();
+            try {
+                buffer.put(bytes);
+            } finally {
+                SharedMemory.unmap(buffer);
+            }
+            sharedMemory.setProtect(OsConstants.PROT_READ);
+            return sharedMemory;
+        } catch (ErrnoException exception) {
+            Log.w(TAG, "Fail to create shared partner values", exception);
+            if (sharedMemory != null) {
+                sharedMemory.close();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the shared values in the given provider reply, mapped read-only, or {@code null} if
+     * the reply holds none. Closes and removes the shared memory from the reply; the mapping stays
+     * valid until the returned values are garbage collected.
+     */
+    @Nullable
+    static SharedPartnerValues readSharedValues(@Nullable Bundle reply) {
+        if (reply == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.O_MR1) {
+            return null;
+        }
+
+        SharedMemory sharedMemory = reply.getParcelable(KEY_SHARED_VALUES_SHARED_MEMORY);
+        reply.remove(KEY_SHARED_VALUES_SHARED_MEMORY);
+        if (sharedMemory == null) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = sharedMemory.mapReadOnly();
+            SharedPartnerValues sharedValues = SharedPartnerValues.read(buffer);
+            if (sharedValues == null) {
+                SharedMemory.unmap(buffer);
+            }
+            return sharedValues;
+        } catch (ErrnoException exception) {
+            Log.w(TAG, "Fail to map shared partner values", exception);
+            return null;
+        } finally {
+            sharedMemory.close();
+        }
+    }
+
+    private static PartnerConfigTable readSharedMemory(SharedMemory sharedMemory) {
+        try {
+            ByteBuffer buffer = sharedMemory.mapReadOnly();
+            try {
+                return decode(buffer);
+            } finally {
+                SharedMemory.unmap(buffer);
+            }
+        } catch (ErrnoException exception) {
+            Log.w(TAG, "Fail to map compact partner config", exception);
+            return null;
+        } finally {
+            sharedMemory.close();
+        }
+    }
+
+    /**
+     * Decodes a compact config into a table over its strings and entries, or returns {@code null}
+     * if the buffer isn't a well-formed compact config of a supported version. Every count and
+     * index is checked against the buffer before use; keys this version doesn't know are skipped.
+     */
+    @Nullable
+    static PartnerConfigTable decode(@NonNull ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != COMPACT_FORMAT_VERSION) {
+                Log.w(TAG, "Ignoring compact partner config with unknown format");
+                return null;
+            }
+
+            // Each string takes at least its two byte length.
+            int stringCount = buffer.getInt();
+            if (stringCount < 0 || stringCount > buffer.remaining() / 2) {
+                return malformed("string count " + stringCount);
+            }
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                int length = buffer.getShort() & 0xffff;
+                if (length > buffer.remaining()) {
+                    return malformed("string length " + length);
+                }
+                byte[] utf8 = new byte[length];
+                buffer.get(utf8);
+                strings[i] = new String(utf8, StandardCharsets.UTF_8);
+            }
+
+            int entryCount = buffer.getInt();
+            if (entryCount < 0 || entryCount > buffer.remaining() / (INTS_PER_ENTRY * 4)) {
+                return malformed("entry count " + entryCount);
+            }
+            int[] entries = PartnerConfigTable.newEntries();
+            for (int i = 0; i < entryCount; i++) {
+                int keyIndex = buffer.getInt();
+                int packageIndex = buffer.getInt();
+                int resourceNameIndex = buffer.getInt();
+                int resourceId = buffer.getInt();
+                if (!isIndex(keyIndex, strings)
+                        || !isIndex(packageIndex, strings)
+                        || !isIndex(resourceNameIndex, strings)) {
+                    return malformed("string index in entry " + i);
+                }
+                PartnerConfig partnerConfig =
+                        PartnerConfigTable.getPartnerConfig(strings[keyIndex]);
+                if (partnerConfig != null) {
+                    PartnerConfigTable.setEntry(
+                            entries, partnerConfig, packageIndex, resourceNameIndex, resourceId);
+                }
+            }
+            return new PartnerConfigTable(strings, entries);
+        } catch (BufferUnderflowException exception) {
+            return malformed("truncated buffer");
+        }
+    }
+
+    private static boolean isIndex(int index, String[] strings) {
+        return index >= 0 && index < strings.length;
+    }
+
+    private static PartnerConfigTable malformed(String reason) {
+        Log.w(TAG, "Ignoring malformed compact partner config: " + reason);
+        return null;
+    }
+
+    private static int indexOf(String string, List<String> strings, Map<String, Integer> indexes) {
+        Integer index = indexes.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            indexes.put(string, index);
+        }
+        return index;
+    }
+
+    private PartnerConfigProtocol() {
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * An immutable view of every {@link PartnerConfig} resolved in a single pass. Instances are safe
+ * to share between threads; drawables are kept as {@link Drawable.ConstantState} so every caller
+ * gets its own {@link Drawable}.
+ *
+ * @see PartnerConfigHelper#getSnapshot(android.content.Context)
+ */
+public final class PartnerConfigSnapshot {
+
+    /** A snapshot in which no partner configuration is present. */
+    static final PartnerConfigSnapshot EMPTY = new PartnerConfigSnapshot(
+            new boolean[PartnerConfig.values().length],
+            new int[PartnerConfig.values().length],
+            new float[PartnerConfig.values().length],
+            new Object[PartnerConfig.values().length]);
+
+    private final boolean[] mPresent;
+    private final int[] mInts;
+    private final float[] mFloats;
+    private final Object[] mObjects;
+
+    /**
+     * All arrays are indexed by {@link PartnerConfig#ordinal()} and owned by the snapshot after
+     * construction. Colors and booleans (as 0 or 1) are stored in {@code ints}, dimensions in
+     * {@code floats}, and strings and drawable constant states in {@code objects}.
+     */
+    PartnerConfigSnapshot(boolean[] present, int[] ints, float[] floats, Object[] objects) {
+        mPresent = present;
+        mInts = ints;
+        mFloats = floats;
+        mObjects = objects;
+    }
+
+    /** Returns whether the partner overlay provides the given {@code partnerConfig}. */
+    public boolean isPresent(@NonNull PartnerConfig partnerConfig) {
+        return mPresent[partnerConfig.ordinal()];
+    }
+
+    /**
+     * Returns the color of given {@code partnerConfig}, or 0 if the given {@code partnerConfig}
+     * is not found. If the {@code ResourceType} of the given {@code partnerConfig} is not color,
+     * IllegalArgumentException will be thrown.
+     */
+    @ColorInt
+    public int getColor(@NonNull PartnerConfig partnerConfig) {
+        checkType(partnerConfig, PartnerConfig.ResourceType.COLOR);
+        return mInts[partnerConfig.ordinal()];
+    }
+
+    /**
+     * Returns a new {@code Drawable} of given {@code partnerConfig}, or {@code null} if the given
+     * {@code partnerConfig} is not found. If the {@code ResourceType} of the given {@code
+     * partnerConfig} is not drawable, IllegalArgumentException will be thrown.
+     */
+    @Nullable
+    public Drawable getDrawable(@NonNull PartnerConfig partnerConfig) {
+        checkType(partnerConfig, PartnerConfig.ResourceType.DRAWABLE);
+        Drawable.ConstantState state =
+                (Drawable.ConstantState) mObjects[partnerConfig.ordinal()];
+        return state == null ? null : state.newDrawable();
+    }
+
+    /**
+     * Returns the string of the given {@code partnerConfig}, or {@code null} if the given {@code
+     * partnerConfig} is not found. If the {@code ResourceType} of the given {@code partnerConfig}
+     * is not string, IllegalArgumentException will be thrown.
+     */
+    @Nullable
+    public String getString(@NonNull PartnerConfig partnerConfig) {
+        checkType(partnerConfig, PartnerConfig.ResourceType.STRING);
+        return (String) mObjects[partnerConfig.ordinal()];
+    }
+
+    /** Returns the dimension of given {@code partnerConfig}. The default return value is 0. */
+    public float getDimension(@NonNull PartnerConfig partnerConfig) {
+        return getDimension(partnerConfig, 0);
+    }
+
+    /**
+     * Returns the dimension of given {@code partnerConfig}. If the given {@code partnerConfig}
+     * not found, will return {@code defaultValue}. If the {@code ResourceType} of given {@code
+     * partnerConfig} is not dimension, will throw IllegalArgumentException.
+     */
+    public float getDimension(@NonNull PartnerConfig partnerConfig, float defaultValue) {
+        checkType(partnerConfig, PartnerConfig.ResourceType.DIMENSION);
+        int index = partnerConfig.ordinal();
+        return mPresent[index] ? mFloats[index] : defaultValue;
+    }
+
+    /**
+     * Returns the boolean value of given {@code partnerConfig}. If the given {@code partnerConfig}
+     * not found, will return {@code defaultValue}. If the {@code ResourceType} of given {@code
+     * partnerConfig} is not boolean, will throw IllegalArgumentException.
+     */
+    public boolean getBoolean(@NonNull PartnerConfig partnerConfig, boolean defaultValue) {
+        checkType(partnerConfig, PartnerConfig.ResourceType.BOOLEAN);
+        int index = partnerConfig.ordinal();
+        return mPresent[index] ? mInts[index] != 0 : defaultValue;
+    }
+
+    private static void checkType(PartnerConfig partnerConfig, PartnerConfig.ResourceType type) {
+        if (partnerConfig.getResourceType() != type) {
+            throw new IllegalArgumentException(
+                    "Not a " + type.name().toLowerCase(Locale.US) + " resource");
+        }
+    }
+}
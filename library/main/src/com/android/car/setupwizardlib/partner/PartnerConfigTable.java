@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The resource each {@link PartnerConfig} resolves to in a partner config: a table of the package
+ * and resource name strings, each stored once, and the packed entries referring to them, indexed
+ * by config ordinal. A compact config decodes straight into this table, without a {@code Bundle}
+ * or a {@link ResourceEntry} per key.
+ */
+final class PartnerConfigTable {
+
+    /** Package index of the configs the table has no entry for. */
+    private static final int NOT_PRESENT = -1;
+
+    /** Each entry is a package index, a resource name index and a resource id. */
+    private static final int INTS_PER_ENTRY = 3;
+
+    private static final Map<String, PartnerConfig> CONFIGS_BY_KEY = new HashMap<>();
+
+    static {
+        for (PartnerConfig partnerConfig : PartnerConfig.values()) {
+            CONFIGS_BY_KEY.put(partnerConfig.getResourceName(), partnerConfig);
+        }
+    }
+
+    /** A table without entries. */
+    static final PartnerConfigTable EMPTY = new PartnerConfigTable(new String[0], newEntries());
+
+    private final String[] mStrings;
+    private final int[] mEntries;
+    private final int mSize;
+
+    /**
+     * Creates a table over {@code strings} and {@code entries}, as created by {@link
+     * #newEntries} and filled by {@link #setEntry}. Both are used as is, not copied.
+     */
+    PartnerConfigTable(@NonNull String[] strings, @NonNull int[] entries) {
+        mStrings = strings;
+        mEntries = entries;
+        int size = 0;
+        for (PartnerConfig partnerConfig : PartnerConfig.values()) {
+            if (contains(partnerConfig)) {
+                size++;
+            }
+        }
+        mSize = size;
+    }
+
+    /** Returns the entries of an empty table, to be filled by {@link #setEntry}. */
+    @NonNull
+    static int[] newEntries() {
+        int[] entries = new int[PartnerConfig.values().length * INTS_PER_ENTRY];
+        for (int i = 0; i < entries.length; i += INTS_PER_ENTRY) {
+            entries[i] = NOT_PRESENT;
+        }
+        return entries;
+    }
+
+    /**
+     * Sets the entry of {@code partnerConfig} in {@code entries} to the strings at {@code
+     * packageIndex} and {@code resourceNameIndex} and {@code resourceId}.
+     */
+    static void setEntry(@NonNull int[] entries, @NonNull PartnerConfig partnerConfig,
+            int packageIndex, int resourceNameIndex, int resourceId) {
+        int offset = partnerConfig.ordinal() * INTS_PER_ENTRY;
+        entries[offset] = packageIndex;
+        entries[offset + 1] = resourceNameIndex;
+        entries[offset + 2] = resourceId;
+    }
+
+    /**
+     * Returns the config of the given {@link PartnerConfigKey}, or {@code null} if this version of
+     * the library doesn't know it.
+     */
+    @Nullable
+    static PartnerConfig getPartnerConfig(@NonNull String key) {
+        return CONFIGS_BY_KEY.get(key);
+    }
+
+    /**
+     * Returns the table of a config in the {@code Bundle} protocol, one {@link
+     * ResourceEntry#toBundle()} per key, or {@code null} if there is no config. Unknown keys and
+     * incomplete entries are left out.
+     */
+    @Nullable
+    static PartnerConfigTable fromBundle(@Nullable Bundle resultBundle) {
+        if (resultBundle == null) {
+            return null;
+        }
+        Builder builder = new Builder();
+        for (String key : resultBundle.keySet()) {
+            PartnerConfig partnerConfig = getPartnerConfig(key);
+            ResourceEntry entry = ResourceEntry.fromBundle(resultBundle.getBundle(key));
+            if (partnerConfig != null && entry != null) {
+                builder.put(partnerConfig, entry.getPackageName(), entry.getResourceName(),
+                        entry.getResourceId());
+            }
+        }
+        return builder.build();
+    }
+
+    /** Returns whether the table has an entry for {@code partnerConfig}. */
+    boolean contains(@NonNull PartnerConfig partnerConfig) {
+        return mEntries[partnerConfig.ordinal() * INTS_PER_ENTRY] != NOT_PRESENT;
+    }
+
+    /** Returns the number of configs the table has an entry for. */
+    int size() {
+        return mSize;
+    }
+
+    /** Returns the package of the entry of {@code partnerConfig}, if {@link #contains} it. */
+    @Nullable
+    String getPackageName(@NonNull PartnerConfig partnerConfig) {
+        int index = mEntries[partnerConfig.ordinal() * INTS_PER_ENTRY];
+        return index == NOT_PRESENT ? null : mStrings[index];
+    }
+
+    /** Returns the resource name of the entry of {@code partnerConfig}, if {@link #contains} it. */
+    @Nullable
+    String getResourceName(@NonNull PartnerConfig partnerConfig) {
+        int offset = partnerConfig.ordinal() * INTS_PER_ENTRY;
+        return mEntries[offset] == NOT_PRESENT ? null : mStrings[mEntries[offset + 1]];
+    }
+
+    /** Returns the resource id of the entry of {@code partnerConfig}, if {@link #contains} it. */
+    int getResourceId(@NonNull PartnerConfig partnerConfig) {
+        return mEntries[partnerConfig.ordinal() * INTS_PER_ENTRY + 2];
+    }
+
+    /**
+     * Returns the entry of {@code partnerConfig}, or {@code null} if the table has none. Allocates,
+     * prefer the other getters on hot paths.
+     */
+    @Nullable
+    ResourceEntry getResourceEntry(@NonNull PartnerConfig partnerConfig) {
+        if (!contains(partnerConfig)) {
+            return null;
+        }
+        return new ResourceEntry(getPackageName(partnerConfig),
+                getResourceName(partnerConfig), getResourceId(partnerConfig));
+    }
+
+    /**
+     * Returns the table with only the entries of {@code partnerConfigs}, or this table if it has
+     * no other entries.
+     */
+    @NonNull
+    PartnerConfigTable retainAll(@NonNull Set<PartnerConfig> partnerConfigs) {
+        int[] entries = null;
+        for (PartnerConfig partnerConfig : PartnerConfig.values()) {
+            if (contains(partnerConfig) && !partnerConfigs.contains(partnerConfig)) {
+                if (entries == null) {
+                    entries = mEntries.clone();
+                }
+                entries[partnerConfig.ordinal() * INTS_PER_ENTRY] = NOT_PRESENT;
+            }
+        }
+        return entries == null ? this : new PartnerConfigTable(mStrings, entries);
+    }
+
+    /** Returns whether any entry refers to a resource of {@code packageName}. */
+    boolean refersToPackage(@NonNull String packageName) {
+        for (PartnerConfig partnerConfig : PartnerConfig.values()) {
+            if (packageName.equals(getPackageName(partnerConfig))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns whether {@code partnerConfig} resolves to the same resource in both tables. */
+    boolean isSameEntry(@NonNull PartnerConfigTable other, @NonNull PartnerConfig partnerConfig) {
+        return Objects.equals(getPackageName(partnerConfig), other.getPackageName(partnerConfig))
+                && Objects.equals(
+                        getResourceName(partnerConfig), other.getResourceName(partnerConfig))
+                && getResourceId(partnerConfig) == other.getResourceId(partnerConfig);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PartnerConfigTable)) {
+            return false;
+        }
+        PartnerConfigTable that = (PartnerConfigTable) o;
+        for (PartnerConfig partnerConfig : PartnerConfig.values()) {
+            if (!isSameEntry(that, partnerConfig)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        Object[] entries = new Object[PartnerConfig.values().length];
+        for (PartnerConfig partnerConfig : PartnerConfig.values()) {
+            entries[partnerConfig.ordinal()] = getResourceEntry(partnerConfig);
+        }
+        return Arrays.hashCode(entries);
+    }
+
+    /** Builds a table entry by entry, storing each string once. */
+    static final class Builder {
+        private final List<String> mStrings = new ArrayList<>();
+        private final Map<String, Integer> mStringIndexes = new HashMap<>();
+        private final int[] mEntries = newEntries();
+
+        /**
+         * Sets the entry of {@code partnerConfig}. Does nothing if the package or resource name is
+         * missing.
+         */
+        @NonNull
+        Builder put(@NonNull PartnerConfig partnerConfig, @Nullable String packageName,
+                @Nullable String resourceName, int resourceId) {
+            if (packageName != null && resourceName != null) {
+                setEntry(mEntries, partnerConfig,
+                        indexOf(packageName), indexOf(resourceName), resourceId);
+            }
+            return this;
+        }
+
+        @NonNull
+        PartnerConfigTable build() {
+            return new PartnerConfigTable(mStrings.toArray(new String[0]), mEntries.clone());
+        }
+
+        private int indexOf(String string) {
+            Integer index = mStringIndexes.get(string);
+            if (index == null) {
+                index = mStrings.size();
+                mStrings.add(string);
+                mStringIndexes.put(string, index);
+            }
+            return index;
+        }
+    }
+}
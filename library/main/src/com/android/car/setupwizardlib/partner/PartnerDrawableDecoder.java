@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageDecoder;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.util.Log;
+import android.util.TypedValue;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.car.setupwizardlib.R;
+
+import java.io.IOException;
+
+/**
+ * Decodes partner drawables no larger than the toolbar draws them. Overlays may ship bitmaps far
+ * larger than needed; decoding them at full size wastes both time and memory, so bitmap
+ * resources are downsampled to the target size while they are decoded, into hardware bitmaps
+ * where the platform allows. Every other kind of drawable, such as vectors, shapes and nine
+ * patches, scales losslessly and is loaded as is.
+ */
+final class PartnerDrawableDecoder {
+
+    private static final String TAG = PartnerDrawableDecoder.class.getSimpleName();
+
+    /** Target size of a dimension the drawable isn't bounded in. */
+    static final int UNBOUNDED = 0;
+
+    /**
+     * Returns the drawable of {@code resourceId}, with bitmaps downsampled so that they are no
+     * larger than {@code maxWidth} by {@code maxHeight} pixels, either of which may be {@link
+     * #UNBOUNDED}. The aspect ratio is kept.
+     */
+    @Nullable
+    static Drawable decode(
+            @NonNull Resources resources, int resourceId, int maxWidth, int maxHeight) {
+        if (maxWidth != UNBOUNDED || maxHeight != UNBOUNDED) {
+            TypedValue value = new TypedValue();
+            resources.getValue(resourceId, value, /* resolveRefs= */ true);
+            if (isScalableBitmap(value)) {
+                try {
+                    return decodeBitmap(resources, resourceId, value, maxWidth, maxHeight);
+                } catch (IOException | RuntimeException exception) {
+                    Log.w(TAG, "Fail to downsample " + value.string + ", loading it as is",
+                            exception);
+                }
+            }
+        }
+        return resources.getDrawable(resourceId, null);
+    }
+
+    /** Returns the largest width the toolbar draws {@code partnerConfig} at. */
+    static int getMaxWidth(@NonNull Resources resources, @NonNull PartnerConfig partnerConfig) {
+        switch (partnerConfig) {
+            case CONFIG_TOOLBAR_BUTTON_ICON_BACK:
+                return resources.getDimensionPixelSize(R.dimen.car_primary_icon_size);
+            default:
+                // Buttons grow with their label.
+                return UNBOUNDED;
+        }
+    }
+
+    /** Returns the largest height the toolbar draws {@code partnerConfig} at. */
+    static int getMaxHeight(@NonNull Resources resources, @NonNull PartnerConfig partnerConfig) {
+        switch (partnerConfig) {
+            case CONFIG_TOOLBAR_BUTTON_ICON_BACK:
+                return resources.getDimensionPixelSize(R.dimen.car_primary_icon_size);
+            case CONFIG_TOOLBAR_PRIMARY_BUTTON_BG:
+            case CONFIG_TOOLBAR_SECONDARY_BUTTON_BG:
+                return resources.getDimensionPixelSize(R.dimen.car_app_bar_height);
+            default:
+                return UNBOUNDED;
+        }
+    }
+
+    private static boolean isScalableBitmap(TypedValue value) {
+        if (value.string == null) {
+            return false;
+        }
+        String file = value.string.toString();
+        // Scaling a nine patch would also scale its stretchable areas.
+        return !file.endsWith(".9.png")
+                && (file.endsWith(".png") || file.endsWith(".jpg") || file.endsWith(".webp"));
+    }
+
+    private static Drawable decodeBitmap(Resources resources, int resourceId, TypedValue value,
+            int maxWidth, int maxHeight) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            ImageDecoder.Source source = ImageDecoder.createSource(resources, resourceId);
+            // The default allocator already picks hardware bitmaps whenever it can.
+            return ImageDecoder.decodeDrawable(source, (decoder, info, unused) -> {
+                float scale = getScale(info.getSize().getWidth(), info.getSize().getHeight(),
+                        maxWidth, maxHeight);
+                if (scale < 1) {
+                    decoder.setTargetSize(
+                            Math.max(1, Math.round(info.getSize().getWidth() * scale)),
+                            Math.max(1, Math.round(info.getSize().getHeight() * scale)));
+                }
+            });
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resourceId, options);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = getSampleSize(
+                getScale(options.outWidth, options.outHeight, maxWidth, maxHeight));
+        options.inPreferredConfig = Bitmap.Config.HARDWARE;
+        Bitmap bitmap = BitmapFactory.decodeResource(resources, resourceId, options);
+        if (bitmap == null) {
+            throw new IOException("Fail to decode " + value.string);
+        }
+        return new BitmapDrawable(resources, bitmap);
+    }
+
+    /**
+     * Returns the factor to scale a {@code width} by {@code height} image by to fit in the given
+     * bounds, 1 or more if it already fits.
+     */
+    @VisibleForTesting
+    static float getScale(int width, int height, int maxWidth, int maxHeight) {
+        float scale = 1;
+        if (maxWidth != UNBOUNDED && width > maxWidth) {
+            scale = Math.min(scale, maxWidth / (float) width);
+        }
+        if (maxHeight != UNBOUNDED && height > maxHeight) {
+            scale = Math.min(scale, maxHeight / (float) height);
+        }
+        return scale;
+    }
+
+    /**
+     * Returns the largest power of two sample size that doesn't scale an image below the given
+     * {@code scale}, which {@code BitmapFactory} decodes most efficiently.
+     */
+    @VisibleForTesting
+    static int getSampleSize(float scale) {
+        int sampleSize = 1;
+        while (scale * sampleSize * 2 <= 1) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private PartnerDrawableDecoder() {
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cache of resolved partner resources indexed by {@link PartnerConfig#ordinal()}, with one
+ * primitive store per {@link PartnerConfig.ResourceType} so hits neither box nor allocate.
+ *
+ * <p>Each slot is published through a volatile write to its state after the value is stored, and
+ * readers check the state with a volatile read before touching the value. A reader that observes
+ * a slot as present therefore also observes its value, from any thread, without locking.
+ * Concurrent writers of the same slot store the same resolved value, so the last one wins
+ * harmlessly. The cache is never cleared in place; callers invalidate it by replacing the
+ * instance, so a resolution that is still in flight can only land in the discarded cache.
+ */
+final class PartnerResourceCache {
+
+    /** Nothing has been resolved for the slot yet. */
+    static final int STATE_EMPTY = 0;
+    /** The slot holds a resolved value. */
+    static final int STATE_PRESENT = 1;
+    /** The slot is a tombstone: the partner overlay does not provide a usable value. */
+    static final int STATE_MISSING = 2;
+
+    private static final int SIZE = PartnerConfig.values().length;
+
+    private final AtomicIntegerArray mStates = new AtomicIntegerArray(SIZE);
+    private final int[] mColors = new int[SIZE];
+    private final float[] mDimensions = new float[SIZE];
+    private final AtomicLongArray mBooleans = new AtomicLongArray((SIZE + 63) / 64);
+    private final AtomicReferenceArray<Object> mObjects = new AtomicReferenceArray<>(SIZE);
+
+    /** Returns one of the {@code STATE_*} constants for the given {@code partnerConfig}. */
+    int getState(@NonNull PartnerConfig partnerConfig) {
+        return mStates.get(partnerConfig.ordinal());
+    }
+
+    /** Returns whether a value has been cached for the given {@code partnerConfig}. */
+    boolean contains(@NonNull PartnerConfig partnerConfig) {
+        return mStates.get(partnerConfig.ordinal()) == STATE_PRESENT;
+    }
+
+    /** Returns the cached color, only valid if {@link #contains} returned {@code true}. */
+    @ColorInt
+    int getColor(@NonNull PartnerConfig partnerConfig) {
+        return mColors[partnerConfig.ordinal()];
+    }
+
+    void putColor(@NonNull PartnerConfig partnerConfig, @ColorInt int color) {
+        int index = partnerConfig.ordinal();
+        mColors[index] = color;
+        mStates.set(index, STATE_PRESENT);
+    }
+
+    /** Returns the cached dimension, only valid if {@link #contains} returned {@code true}. */
+    float getDimension(@NonNull PartnerConfig partnerConfig) {
+        return mDimensions[partnerConfig.ordinal()];
+    }
+
+    void putDimension(@NonNull PartnerConfig partnerConfig, float dimension) {
+        int index = partnerConfig.ordinal();
+        mDimensions[index] = dimension;
+        mStates.set(index, STATE_PRESENT);
+    }
+
+    /** Returns the cached boolean, only valid if {@link #contains} returned {@code true}. */
+    boolean getBoolean(@NonNull PartnerConfig partnerConfig) {
+        int index = partnerConfig.ordinal();
+        return (mBooleans.get(index >> 6) & (1L << index)) != 0;
+    }
+
+    void putBoolean(@NonNull PartnerConfig partnerConfig, boolean value) {
+        int index = partnerConfig.ordinal();
+        long mask = 1L << index;
+        long bits;
+        do {
+            bits = mBooleans.get(index >> 6);
+        } while (!mBooleans.compareAndSet(index >> 6, bits, value ? bits | mask : bits & ~mask));
+        mStates.set(index, STATE_PRESENT);
+    }
+
+    /**
+     * Returns the cached object (a drawable or string), only valid if {@link #contains} returned
+     * {@code true}.
+     */
+    Object getObject(@NonNull PartnerConfig partnerConfig) {
+        return mObjects.get(partnerConfig.ordinal());
+    }
+
+    void putObject(@NonNull PartnerConfig partnerConfig, @NonNull Object value) {
+        int index = partnerConfig.ordinal();
+        mObjects.set(index, value);
+        mStates.set(index, STATE_PRESENT);
+    }
+
+    /**
+     * Caches {@code value} unless an object was cached first, and returns the cached one, so
+     * concurrent decoders of the same drawable end up sharing one constant state.
+     */
+    @NonNull
+    Object putObjectIfAbsent(@NonNull PartnerConfig partnerConfig, @NonNull Object value) {
+        int index = partnerConfig.ordinal();
+        if (!mObjects.compareAndSet(index, null, value)) {
+            value = mObjects.get(index);
+        }
+        mStates.set(index, STATE_PRESENT);
+        return value;
+    }
+
+    /**
+     * Records that the partner overlay does not provide the given {@code partnerConfig}, so later
+     * lookups return the caller's default without resolving it again.
+     */
+    void putMissing(@NonNull PartnerConfig partnerConfig) {
+        mStates.set(partnerConfig.ordinal(), STATE_MISSING);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import android.content.pm.ActivityInfo;
+import android.content.res.Configuration;
+import android.util.TypedValue;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The {@link Configuration} partner resources of a given {@link PartnerConfig.ResourceType} were
+ * resolved under, along with the configuration changes they depend on, in the {@link
+ * ActivityInfo#configChanges} bits reported by {@link TypedValue#changingConfigurations} and
+ * {@link Configuration#diff}. Resources resolved under a configuration that only differs from the
+ * key in changes they don't depend on are interchangeable, so they can share one cache entry.
+ *
+ * <p>A key for a {@code null} type covers the resources of every type, as needed by a {@link
+ * PartnerConfigSnapshot}.
+ */
+final class ResourceConfigKey {
+
+    @Nullable private final PartnerConfig.ResourceType mType;
+    private final Configuration mConfig;
+    private final int mChangingConfigurations;
+
+    private ResourceConfigKey(@Nullable PartnerConfig.ResourceType type,
+            Configuration config, int changingConfigurations) {
+        mType = type;
+        mConfig = config;
+        mChangingConfigurations = changingConfigurations;
+    }
+
+    /**
+     * Returns the key of resources of the given {@code type}, or of a whole snapshot if {@code
+     * type} is {@code null}, resolved under {@code config} and depending on the {@code
+     * changingConfigurations}.
+     */
+    @NonNull
+    static ResourceConfigKey of(@NonNull Configuration config,
+            @Nullable PartnerConfig.ResourceType type, int changingConfigurations) {
+        return new ResourceConfigKey(type, new Configuration(config), changingConfigurations);
+    }
+
+    /**
+     * Returns the configuration changes a resource resolved into {@code value} by {@link
+     * android.content.res.Resources#getValue} depends on. Besides the qualifiers it has variants
+     * for, dimensions depend on the density and, in {@code sp}, on the font scale.
+     */
+    static int getChangingConfigurations(@NonNull TypedValue value) {
+        int changingConfigurations = value.changingConfigurations;
+        if (value.type == TypedValue.TYPE_DIMENSION) {
+            int unit = (value.data >> TypedValue.COMPLEX_UNIT_SHIFT)
+                    & TypedValue.COMPLEX_UNIT_MASK;
+            if (unit != TypedValue.COMPLEX_UNIT_PX) {
+                changingConfigurations |= ActivityInfo.CONFIG_DENSITY;
+            }
+            if (unit == TypedValue.COMPLEX_UNIT_SP) {
+                changingConfigurations |= ActivityInfo.CONFIG_FONT_SCALE;
+            }
+        }
+        return changingConfigurations;
+    }
+
+    /** Returns the resource type of this key, or {@code null} for a whole snapshot. */
+    @Nullable
+    PartnerConfig.ResourceType getType() {
+        return mType;
+    }
+
+    /** Returns the configuration changes the resources of this key depend on. */
+    int getChangingConfigurations() {
+        return mChangingConfigurations;
+    }
+
+    /**
+     * Returns whether resources of this key are still valid under {@code config}, that is whether
+     * it differs from the configuration they were resolved under only in changes they don't
+     * depend on.
+     */
+    boolean matches(@NonNull Configuration config) {
+        return (mConfig.diff(config) & mChangingConfigurations) == 0;
+    }
+}
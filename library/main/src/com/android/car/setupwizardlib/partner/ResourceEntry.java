@@ -22,6 +22,8 @@ import android.os.Bundle;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
+import java.util.Objects;
+
 /**
  * A potentially cross-package resource entry, which can then be retrieved using {@link
  * PackageManager#getResourcesForApplication(String)}. This class can also be sent across to other
@@ -85,4 +87,23 @@ public final class ResourceEntry {
         result.putInt(KEY_RESOURCE_ID, mResourceId);
         return result;
     }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ResourceEntry)) {
+            return false;
+        }
+        ResourceEntry entry = (ResourceEntry) other;
+        return mResourceId == entry.mResourceId
+                && Objects.equals(mPackageName, entry.mPackageName)
+                && Objects.equals(mResourceName, entry.mResourceName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mPackageName, mResourceName, mResourceId);
+    }
 }
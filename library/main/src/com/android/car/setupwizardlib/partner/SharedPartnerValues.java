@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.Resources.NotFoundException;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.util.Log;
+import android.util.TypedValue;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Colors, dimensions and booleans resolved once by the partner provider and read by every wizard
+ * process straight from a read-only shared memory region, so that N processes cost one
+ * resolution instead of N.
+ *
+ * <p>Region format, all values big-endian:
+ * <pre>
+ *   int   magic
+ *   int   format version
+ *   int   byte length of the parcelled {@link Configuration} the values were resolved under,
+ *         followed by those bytes
+ *   int   entry count, followed by each entry as an unsigned short byte length and the UTF-8
+ *         bytes of its {@link PartnerConfigKey}, the int configuration changes the value depends
+ *         on, then an int value: the color, the float bits of the dimension in pixels, or 1 for
+ *         {@code true}
+ * </pre>
+ *
+ * <p>Values are only used under a configuration that differs from the one they were resolved
+ * under only in changes they don't depend on, see {@link ResourceConfigKey}.
+ */
+final class SharedPartnerValues {
+
+    private static final String TAG = SharedPartnerValues.class.getSimpleName();
+
+    private static final int MAGIC = 0x53555756; // "SUWV"
+    private static final int NOT_PRESENT = -1;
+
+    private static final Map<String, PartnerConfig> CONFIGS_BY_KEY = new HashMap<>();
+
+    static {
+        for (PartnerConfig partnerConfig : PartnerConfig.values()) {
+            CONFIGS_BY_KEY.put(partnerConfig.getResourceName(), partnerConfig);
+        }
+    }
+
+    /** The mapped region; only read with absolute gets, so it can be shared between threads. */
+    private final ByteBuffer mBuffer;
+    /** Offset of the value of each config in {@link #mBuffer}, by ordinal. */
+    private final int[] mValueOffsets;
+    /** The configuration each value was resolved under and the changes it depends on. */
+    private final ResourceConfigKey[] mConfigKeys;
+
+    private SharedPartnerValues(
+            ByteBuffer buffer, int[] valueOffsets, ResourceConfigKey[] configKeys) {
+        mBuffer = buffer;
+        mValueOffsets = valueOffsets;
+        mConfigKeys = configKeys;
+    }
+
+    /**
+     * Returns whether the region holds a value of {@code partnerConfig} that is valid under
+     * {@code config}.
+     */
+    boolean contains(@NonNull PartnerConfig partnerConfig, @NonNull Configuration config) {
+        return mValueOffsets[partnerConfig.ordinal()] != NOT_PRESENT
+                && mConfigKeys[partnerConfig.ordinal()].matches(config);
+    }
+
+    /** Returns the color of {@code partnerConfig}; only valid if {@link #contains} it. */
+    @ColorInt
+    int getColor(@NonNull PartnerConfig partnerConfig) {
+        return mBuffer.getInt(mValueOffsets[partnerConfig.ordinal()]);
+    }
+
+    /** Returns the dimension of {@code partnerConfig}; only valid if {@link #contains} it. */
+    float getDimension(@NonNull PartnerConfig partnerConfig) {
+        return mBuffer.getFloat(mValueOffsets[partnerConfig.ordinal()]);
+    }
+
+    /** Returns the boolean of {@code partnerConfig}; only valid if {@link #contains} it. */
+    boolean getBoolean(@NonNull PartnerConfig partnerConfig) {
+        return mBuffer.getInt(mValueOffsets[partnerConfig.ordinal()]) != 0;
+    }
+
+    /**
+     * Indexes a mapped region without copying its values, or returns {@code null} if the buffer
+     * isn't a region of a supported version.
+     */
+    @Nullable
+    static SharedPartnerValues read(@NonNull ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC
+                    || buffer.getInt() != PartnerConfigProtocol.SHARED_VALUES_FORMAT_VERSION) {
+                Log.w(TAG, "Ignoring shared partner values with unknown format");
+                return null;
+            }
+
+            int configLength = buffer.getInt();
+            if (configLength < 0 || configLength > buffer.remaining()) {
+                Log.w(TAG, "Ignoring truncated shared partner values");
+                return null;
+            }
+            byte[] configBytes = new byte[configLength];
+            buffer.get(configBytes);
+            Configuration config = unparcelConfiguration(configBytes);
+
+            int[] valueOffsets = new int[PartnerConfig.values().length];
+            Arrays.fill(valueOffsets, NOT_PRESENT);
+            ResourceConfigKey[] configKeys = new ResourceConfigKey[PartnerConfig.values().length];
+            int entryCount = buffer.getInt();
+            for (int i = 0; i < entryCount; i++) {
+                byte[] utf8 = new byte[buffer.getShort() & 0xffff];
+                buffer.get(utf8);
+                int changingConfigurations = buffer.getInt();
+                int valueOffset = buffer.position();
+                buffer.getInt();
+                PartnerConfig partnerConfig =
+                        CONFIGS_BY_KEY.get(new String(utf8, StandardCharsets.UTF_8));
+                // Skip keys this version of the library doesn't know.
+                if (partnerConfig != null && isPrimitive(partnerConfig)) {
+                    valueOffsets[partnerConfig.ordinal()] = valueOffset;
+                    configKeys[partnerConfig.ordinal()] = ResourceConfigKey.of(
+                            config, partnerConfig.getResourceType(), changingConfigurations);
+                }
+            }
+            return new SharedPartnerValues(buffer, valueOffsets, configKeys);
+        } catch (BufferUnderflowException exception) {
+            Log.w(TAG, "Ignoring truncated shared partner values", exception);
+            return null;
+        } catch (RuntimeException exception) {
+            // Unparcelling a malformed configuration.
+            Log.w(TAG, "Ignoring malformed shared partner values", exception);
+            return null;
+        }
+    }
+
+    /**
+     * Resolves the colors, dimensions and booleans of a config in the {@code Bundle} protocol
+     * under the configuration of {@code context} and encodes them into the region format.
+     * Entries that can't be resolved are left out, so clients resolve them themselves.
+     */
+    @NonNull
+    static byte[] encode(@NonNull Context context, @NonNull Bundle resultBundle) {
+        Configuration config = context.getResources().getConfiguration();
+        PackageManager packageManager = context.getPackageManager();
+        Map<String, Resources> packageResources = new HashMap<>();
+
+        try {
+            ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+            DataOutputStream entries = new DataOutputStream(entryBytes);
+            int entryCount = 0;
+            for (String key : resultBundle.keySet()) {
+                PartnerConfig partnerConfig = CONFIGS_BY_KEY.get(key);
+                ResourceEntry entry = ResourceEntry.fromBundle(resultBundle.getBundle(key));
+                if (partnerConfig == null || !isPrimitive(partnerConfig) || entry == null) {
+                    continue;
+                }
+
+                int value;
+                int changingConfigurations;
+                try {
+                    Resources resources = packageResources.get(entry.getPackageName());
+                    if (resources == null) {
+                        resources = packageManager.getResourcesForApplication(
+                                entry.getPackageName());
+                        packageResources.put(entry.getPackageName(), resources);
+                    }
+                    value = resolve(resources, partnerConfig, entry.getResourceId());
+                    TypedValue typedValue = new TypedValue();
+                    resources.getValue(entry.getResourceId(), typedValue, /* resolveRefs= */ true);
+                    changingConfigurations =
+                            ResourceConfigKey.getChangingConfigurations(typedValue);
+                } catch (PackageManager.NameNotFoundException | NotFoundException exception) {
+                    Log.w(TAG, "Fail to resolve " + key, exception);
+                    continue;
+                }
+
+                byte[] utf8 = key.getBytes(StandardCharsets.UTF_8);
+                entries.writeShort(utf8.length);
+                entries.write(utf8);
+                entries.writeInt(changingConfigurations);
+                entries.writeInt(value);
+                entryCount++;
+            }
+            entries.flush();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(PartnerConfigProtocol.SHARED_VALUES_FORMAT_VERSION);
+            byte[] configBytes = parcelConfiguration(config);
+            out.writeInt(configBytes.length);
+            out.write(configBytes);
+            out.writeInt(entryCount);
+            entryBytes.writeTo(out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException exception) {
+            // Writing to memory doesn't throw.
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static byte[] parcelConfiguration(Configuration config) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            config.writeToParcel(parcel, /* flags= */ 0);
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static Configuration unparcelConfiguration(byte[] bytes) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+            return Configuration.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static int resolve(Resources resources, PartnerConfig partnerConfig, int resourceId) {
+        switch (partnerConfig.getResourceType()) {
+            case COLOR:
+                return resources.getColor(resourceId, null);
+            case DIMENSION:
+                return Float.floatToIntBits(resources.getDimension(resourceId));
+            case BOOLEAN:
+                return resources.getBoolean(resourceId) ? 1 : 0;
+            default:
+                throw new IllegalArgumentException("Not a primitive resource");
+        }
+    }
+
+    private static boolean isPrimitive(PartnerConfig partnerConfig) {
+        switch (partnerConfig.getResourceType()) {
+            case COLOR:
+            case DIMENSION:
+            case BOOLEAN:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -34,8 +34,8 @@ public final class CarSetupWizardUiUtils {
     public static void maybeHideSystemUI(Activity activity) {
         Preconditions.checkNotNull(activity);
 
-        if (!PartnerConfigHelper.get(activity)
-                .getBoolean(activity, PartnerConfig.CONFIG_IS_IMMERSIVE, true)) {
+        if (!PartnerConfigHelper.get(activity).getSnapshot(activity)
+                .getBoolean(PartnerConfig.CONFIG_IS_IMMERSIVE, true)) {
             if (VERBOSE) {
                 Log.v(TAG, "Immersive mode disabled");
             }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.util;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Typeface;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.FontRes;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Process-wide cache of typefaces used by the setup wizard toolbar, keyed by font family and
+ * style. Loading a typeface may read font files, so it is done on a background thread, typically
+ * at startup by {@link com.android.car.setupwizardlib.partner.PartnerConfigHelper}, and never on
+ * the main thread.
+ */
+public final class TypefaceCache {
+
+    private static final String TAG = TypefaceCache.class.getSimpleName();
+
+    /** Loaded typefaces by family, one map per {@link Typeface#getStyle() style}. */
+    @SuppressWarnings("unchecked")
+    private static final ConcurrentHashMap<String, Typeface>[] sTypefaces =
+            new ConcurrentHashMap[] {
+                    new ConcurrentHashMap<>(), // NORMAL
+                    new ConcurrentHashMap<>(), // BOLD
+                    new ConcurrentHashMap<>(), // ITALIC
+                    new ConcurrentHashMap<>(), // BOLD_ITALIC
+            };
+
+    /** Loaded font resources by id. */
+    private static final SparseArray<Typeface> sFonts = new SparseArray<>();
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Returns the typeface of {@code fontFamily} in {@code style} if it is already loaded, or
+     * {@code null} otherwise. Never does any I/O.
+     */
+    @Nullable
+    public static Typeface getIfLoaded(@NonNull String fontFamily, int style) {
+        return sTypefaces[checkStyle(style)].get(fontFamily);
+    }
+
+    /**
+     * Returns the typeface of {@code fontFamily} in {@code style}, loading it if needed. Falls back
+     * to {@link Typeface#DEFAULT} for unknown families, like {@link Typeface#create(String, int)}.
+     */
+    @WorkerThread
+    @NonNull
+    public static Typeface get(@NonNull String fontFamily, int style) {
+        return sTypefaces[checkStyle(style)].computeIfAbsent(
+                fontFamily, family -> Typeface.create(family, style));
+    }
+
+    /**
+     * Passes the typeface of {@code fontFamily} in {@code style} to {@code callback} on the main
+     * thread: right away if it is loaded, and otherwise once it is loaded on a background thread,
+     * joining the load already under way if there is one.
+     */
+    @MainThread
+    public static void getAsync(
+            @NonNull String fontFamily, int style, @NonNull Consumer<Typeface> callback) {
+        Typeface typeface = getIfLoaded(fontFamily, style);
+        if (typeface != null) {
+            callback.accept(typeface);
+            return;
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            Typeface loaded = get(fontFamily, style);
+            sMainHandler.post(() -> callback.accept(loaded));
+        });
+    }
+
+    /**
+     * Loads the font resource {@code fontRes}, or returns {@code null} if it can't be loaded. The
+     * platform caches loaded fonts too, so this also spares views inflated with the font their
+     * font file I/O.
+     */
+    @WorkerThread
+    @Nullable
+    public static Typeface getFont(@NonNull Context context, @FontRes int fontRes) {
+        synchronized (sFonts) {
+            Typeface font = sFonts.get(fontRes);
+            if (font != null) {
+                return font;
+            }
+        }
+        try {
+            Typeface font = context.getResources().getFont(fontRes);
+            synchronized (sFonts) {
+                sFonts.put(fontRes, font);
+            }
+            return font;
+        } catch (Resources.NotFoundException exception) {
+            Log.w(TAG, "Couldn't load font resource " + fontRes, exception);
+            return null;
+        }
+    }
+
+    @VisibleForTesting
+    static void clearForTesting() {
+        for (ConcurrentHashMap<String, Typeface> typefaces : sTypefaces) {
+            typefaces.clear();
+        }
+        synchronized (sFonts) {
+            sFonts.clear();
+        }
+    }
+
+    private static int checkStyle(int style) {
+        if (style < 0 || style >= sTypefaces.length) {
+            throw new IllegalArgumentException("Unknown typeface style " + style);
+        }
+        return style;
+    }
+
+    private TypefaceCache() {
+    }
+}
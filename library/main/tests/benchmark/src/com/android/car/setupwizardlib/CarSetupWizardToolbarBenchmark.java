@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.view.ViewStub;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.annotation.UiThreadTest;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.car.setupwizardlib.partner.PartnerConfigHelper;
+import com.android.car.setupwizardlib.partner.PartnerConfigSnapshot;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares building the flat toolbar with its buttons in code, as {@code buildToolbarInCode}
+ * layouts do, to inflating it with its button stubs.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class CarSetupWizardToolbarBenchmark {
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private Context mContext;
+    private PartnerConfigSnapshot mSnapshot;
+
+    @Before
+    public void setUp() {
+        mContext = new ContextThemeWrapper(
+                InstrumentationRegistry.getInstrumentation().getTargetContext(),
+                android.R.style.Theme_DeviceDefault);
+        mSnapshot = PartnerConfigHelper.get(mContext).getSnapshot(mContext);
+    }
+
+    @Test
+    @UiThreadTest
+    public void buildToolbarWithButtons() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            CarSetupWizardToolbarBuilder builder =
+                    new CarSetupWizardToolbarBuilder(mContext, mSnapshot);
+            CarSetupWizardToolbar toolbar = builder.buildToolbar();
+            toolbar.addView(builder.buildButton(ButtonStyle.Variant.SECONDARY));
+            toolbar.addView(builder.buildButton(ButtonStyle.Variant.PRIMARY));
+        }
+    }
+
+    @Test
+    @UiThreadTest
+    public void inflateToolbarWithButtons() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            View toolbar = PartnerStyledInflater.create(mContext, mSnapshot, null)
+                    .inflate(R.layout.car_setup_wizard_flat_toolbar, null);
+            inflateStub(toolbar, R.id.secondary_toolbar_button_stub,
+                    ButtonStyle.Variant.SECONDARY);
+            inflateStub(toolbar, R.id.primary_toolbar_button_stub, ButtonStyle.Variant.PRIMARY);
+        }
+    }
+
+    private void inflateStub(View toolbar, int stubId, ButtonStyle.Variant variant) {
+        ViewStub stub = toolbar.findViewById(stubId);
+        stub.setLayoutInflater(PartnerStyledInflater.create(mContext, mSnapshot, variant));
+        stub.inflate();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.EnumMap;
+
+/**
+ * Compares the cache hit path of {@link PartnerResourceCache} to the {@code
+ * EnumMap<PartnerConfig, Object>} it replaced, reading a color, a dimension and a boolean.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class PartnerResourceCacheBenchmark {
+
+    private static final PartnerConfig COLOR = PartnerConfig.CONFIG_TOOLBAR_BG_COLOR;
+    private static final PartnerConfig DIMENSION = PartnerConfig.CONFIG_TOOLBAR_BUTTON_TEXT_SIZE;
+    private static final PartnerConfig BOOLEAN = PartnerConfig.CONFIG_IS_IMMERSIVE;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final PartnerResourceCache mCache = new PartnerResourceCache();
+    private final EnumMap<PartnerConfig, Object> mMap = new EnumMap<>(PartnerConfig.class);
+
+    /** Keeps the values read, so that the reads can't be optimized away. */
+    private long mSink;
+
+    @Before
+    public void setUp() {
+        mCache.putColor(COLOR, 0xff000000);
+        mCache.putDimension(DIMENSION, 28f);
+        mCache.putBoolean(BOOLEAN, true);
+
+        mMap.put(COLOR, 0xff000000);
+        mMap.put(DIMENSION, 28f);
+        mMap.put(BOOLEAN, true);
+    }
+
+    @Test
+    public void cacheHits() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        long sink = 0;
+        while (state.keepRunning()) {
+            if (mCache.contains(COLOR)) {
+                sink += mCache.getColor(COLOR);
+            }
+            if (mCache.contains(DIMENSION)) {
+                sink += (long) mCache.getDimension(DIMENSION);
+            }
+            if (mCache.contains(BOOLEAN) && mCache.getBoolean(BOOLEAN)) {
+                sink++;
+            }
+        }
+        mSink = sink;
+    }
+
+    @Test
+    public void enumMapHits() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        long sink = 0;
+        while (state.keepRunning()) {
+            if (mMap.containsKey(COLOR)) {
+                sink += (int) mMap.get(COLOR);
+            }
+            if (mMap.containsKey(DIMENSION)) {
+                sink += (long) (float) mMap.get(DIMENSION);
+            }
+            if (mMap.containsKey(BOOLEAN) && (boolean) mMap.get(BOOLEAN)) {
+                sink++;
+            }
+        }
+        mSink = sink;
+    }
+}
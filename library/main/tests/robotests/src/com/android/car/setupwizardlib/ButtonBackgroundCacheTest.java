@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.GradientDrawable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link ButtonBackgroundCache}. */
+@RunWith(RobolectricTestRunner.class)
+public class ButtonBackgroundCacheTest {
+
+    @Test
+    public void getStyledBackground_nothingToApply_returnSource() {
+        Drawable source = new GradientDrawable();
+
+        assertThat(ButtonBackgroundCache.getStyledBackground(
+                source, /* color= */ 0, ButtonBackgroundCache.KEEP_RADIUS))
+                .isSameInstanceAs(source);
+    }
+
+    @Test
+    public void getStyledBackground_sameVariant_shareConstantState() {
+        Drawable source = new GradientDrawable();
+
+        Drawable first = ButtonBackgroundCache.getStyledBackground(
+                source, Color.RED, /* cornerRadius= */ 4f);
+        Drawable second = ButtonBackgroundCache.getStyledBackground(
+                source, Color.RED, /* cornerRadius= */ 4f);
+
+        assertThat(second).isNotSameInstanceAs(first);
+        assertThat(second.getConstantState()).isSameInstanceAs(first.getConstantState());
+    }
+
+    @Test
+    public void getStyledBackground_shouldNotModifySource() {
+        GradientDrawable source = new GradientDrawable();
+        source.setCornerRadius(1f);
+
+        GradientDrawable styled = (GradientDrawable) ButtonBackgroundCache.getStyledBackground(
+                source, Color.BLUE, /* cornerRadius= */ 8f);
+
+        assertThat(styled.getCornerRadius()).isEqualTo(8f);
+        assertThat(source.getCornerRadius()).isEqualTo(1f);
+        assertThat(source.getConstantState()).isNotSameInstanceAs(styled.getConstantState());
+    }
+}
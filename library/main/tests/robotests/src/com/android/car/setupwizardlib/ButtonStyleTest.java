@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.RuntimeEnvironment.application;
+
+import android.graphics.drawable.Drawable;
+import android.widget.Button;
+
+import com.android.car.setupwizardlib.partner.FakeOverrideContentProvider;
+import com.android.car.setupwizardlib.partner.PartnerConfigHelper;
+import com.android.car.setupwizardlib.partner.PartnerConfigSnapshot;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link ButtonStyle}. */
+@RunWith(RobolectricTestRunner.class)
+public class ButtonStyleTest {
+
+    private PartnerConfigSnapshot mSnapshot;
+
+    @Before
+    public void setUp() {
+        FakeOverrideContentProvider.installDefaultProvider();
+        mSnapshot = PartnerConfigHelper.get(application).getSnapshot(application);
+    }
+
+    @Test
+    public void get_sameSnapshotAndVariant_returnSameInstance() {
+        ButtonStyle style = ButtonStyle.get(mSnapshot, ButtonStyle.Variant.PRIMARY);
+
+        assertThat(ButtonStyle.get(mSnapshot, ButtonStyle.Variant.PRIMARY))
+                .isSameInstanceAs(style);
+        assertThat(ButtonStyle.get(mSnapshot, ButtonStyle.Variant.SECONDARY))
+                .isNotSameInstanceAs(style);
+    }
+
+    @Test
+    public void apply_primary_shouldSetPartnerStyle() {
+        Button button = new Button(application);
+
+        ButtonStyle.get(mSnapshot, ButtonStyle.Variant.PRIMARY).apply(button);
+
+        assertThat(button.getPaddingLeft())
+                .isEqualTo(FakeOverrideContentProvider.DEFAULT_H_PADDING);
+        assertThat(button.getPaddingTop())
+                .isEqualTo(FakeOverrideContentProvider.DEFAULT_V_PADDING);
+        assertThat(button.getTextSize()).isEqualTo(FakeOverrideContentProvider.DEFAULT_DIMENSION);
+        assertThat(button.getBackground()).isNotNull();
+    }
+
+    @Test
+    public void apply_flat_shouldKeepBackground() {
+        Button button = new Button(application);
+        Drawable background = button.getBackground();
+
+        ButtonStyle.get(mSnapshot, ButtonStyle.Variant.FLAT).apply(button);
+
+        assertThat(button.getBackground()).isSameInstanceAs(background);
+        assertThat(button.getPaddingLeft())
+                .isEqualTo(FakeOverrideContentProvider.DEFAULT_H_PADDING);
+    }
+}
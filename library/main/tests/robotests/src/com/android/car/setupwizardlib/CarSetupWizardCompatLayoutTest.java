@@ -21,11 +21,20 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.robolectric.RuntimeEnvironment.application;
 
 import android.app.Activity;
+import android.content.Context;
+import android.content.ContextWrapper;
 import android.content.res.ColorStateList;
+import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.Button;
+import android.widget.ImageView;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import androidx.annotation.ColorRes;
@@ -43,9 +52,11 @@ import org.mockito.Mockito;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.Shadows;
+import org.robolectric.shadows.ShadowLooper;
 import org.robolectric.shadows.ShadowTextView;
 import org.robolectric.util.ReflectionHelpers;
 
+import java.util.EnumSet;
 import java.util.Locale;
 
 /**
@@ -230,21 +241,24 @@ public class CarSetupWizardCompatLayoutTest extends BaseRobolectricTest {
     }
 
     /**
-     * Test that {@link CarSetupWizardCompatLayout#createPrimaryToolbarButton} creates a new button
-     * but holds over the correct attributes.
+     * Test that {@link CarSetupWizardCompatLayout#setPrimaryToolbarButtonFlat} restyles the same
+     * button, keeping its attributes.
      */
     @Test
-    public void testCreatePrimaryButtonTrue() {
+    public void testSetPrimaryToolbarButtonFlatKeepsButton() {
         Button currPrimaryToolbarButton = mCarSetupWizardCompatLayout.getPrimaryToolbarButton();
-        Button primaryToolbarButton = mCarSetupWizardCompatLayout.createPrimaryToolbarButton(true);
+        currPrimaryToolbarButton.setText("button text");
+        Drawable raisedBackground = currPrimaryToolbarButton.getBackground();
 
-        assertThat(primaryToolbarButton.getVisibility()).isEqualTo(
-                currPrimaryToolbarButton.getVisibility());
-        assertThat(primaryToolbarButton.isEnabled()).isEqualTo(
-                currPrimaryToolbarButton.isEnabled());
-        assertThat(primaryToolbarButton.getText()).isEqualTo(currPrimaryToolbarButton.getText());
-        assertThat(primaryToolbarButton.getLayoutParams()).isEqualTo(
-                currPrimaryToolbarButton.getLayoutParams());
+        mCarSetupWizardCompatLayout.setPrimaryToolbarButtonFlat(true);
+
+        Button primaryToolbarButton = mCarSetupWizardCompatLayout.getPrimaryToolbarButton();
+        assertThat(primaryToolbarButton).isSameInstanceAs(currPrimaryToolbarButton);
+        assertThat(primaryToolbarButton.getText().toString()).isEqualTo("button text");
+        assertThat(primaryToolbarButton.getBackground()).isNotSameInstanceAs(raisedBackground);
+        assertThat(primaryToolbarButton.getTag(R.id.button_style)).isSameInstanceAs(
+                ButtonStyle.get(mCarSetupWizardCompatLayout.getPartnerConfigSnapshot(),
+                        ButtonStyle.Variant.FLAT));
     }
 
     /**
@@ -373,6 +387,116 @@ public class CarSetupWizardCompatLayoutTest extends BaseRobolectricTest {
         assertThat(mCarSetupWizardCompatLayout.getProgressBar().getProgress()).isEqualTo(80);
     }
 
+    /**
+     * Test that {@link CarSetupWizardCompatLayout#postProgressBarProgress} applies only the latest
+     * progress, on the next frame.
+     */
+    @Test
+    public void testPostProgressBarProgressAppliesLatestOnNextFrame() {
+        CarSetupWizardCompatLayout layout = createAttachedCarSetupWizardCompatLayout();
+        layout.setProgressBarProgress(10);
+
+        layout.postProgressBarProgress(20);
+        layout.postProgressBarProgress(30);
+        assertThat(layout.getProgressBar().getProgress()).isEqualTo(10);
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertThat(layout.getProgressBar().getProgress()).isEqualTo(30);
+        assertThat(layout.getProgressBar().isIndeterminate()).isFalse();
+    }
+
+    /**
+     * Test that {@link CarSetupWizardCompatLayout#postProgressBarProgress} accepts progress from
+     * a worker thread.
+     */
+    @Test
+    public void testPostProgressBarProgressFromWorkerThread() throws InterruptedException {
+        CarSetupWizardCompatLayout layout = createAttachedCarSetupWizardCompatLayout();
+
+        Thread worker = new Thread(() -> {
+            for (int progress = 1; progress <= 100; progress++) {
+                layout.postProgressBarProgress(progress);
+            }
+        });
+        worker.start();
+        worker.join();
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertThat(layout.getProgressBar().getProgress()).isEqualTo(100);
+    }
+
+    /**
+     * Test that {@link CarSetupWizardCompatLayout#postProgressBarProgress} sets the progress once
+     * for all the progress posted before a frame.
+     */
+    @Test
+    public void testPostProgressBarProgressSetsProgressOncePerFrame() {
+        LayoutRequestCounter counter = new LayoutRequestCounter();
+        CarSetupWizardCompatLayout layout = createLaidOutLayout(counter);
+
+        layout.postProgressBarProgress(20);
+        layout.postProgressBarProgress(30);
+        layout.postProgressBarProgress(40);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertThat(counter.mProgressUpdates).isEqualTo(1);
+        assertThat(layout.getProgressBar().getProgress()).isEqualTo(40);
+    }
+
+    /**
+     * Test that {@link CarSetupWizardCompatLayout#postProgressBarProgress} accepts progress from
+     * a worker thread while the layout is detached.
+     */
+    @Test
+    public void testPostProgressBarProgressFromWorkerThreadWhileDetached()
+            throws InterruptedException {
+        CarSetupWizardCompatLayout layout = createCarSetupWizardCompatLayout();
+
+        Thread worker = new Thread(() -> layout.postProgressBarProgress(40));
+        worker.start();
+        worker.join();
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertThat(layout.getProgressBar().getProgress()).isEqualTo(40);
+    }
+
+    /**
+     * Test that detaching {@link CarSetupWizardCompatLayout} applies the posted progress and
+     * leaves nothing pending, so that later progress is posted again.
+     */
+    @Test
+    public void testDetachAppliesPostedProgress() {
+        CarSetupWizardCompatLayout layout = createAttachedCarSetupWizardCompatLayout();
+        layout.postProgressBarProgress(20);
+
+        ((ViewGroup) layout.getParent()).removeView(layout);
+        assertThat(layout.getProgressBar().getProgress()).isEqualTo(20);
+
+        layout.postProgressBarProgress(60);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertThat(layout.getProgressBar().getProgress()).isEqualTo(60);
+    }
+
+    /**
+     * Test that the work {@link CarSetupWizardCompatLayout} defers past its first frame is done
+     * before it dispatches a touch event.
+     */
+    @Test
+    public void testDispatchTouchEventRunsDeferredWork() {
+        CarSetupWizardCompatLayout layout = createCarSetupWizardCompatLayout();
+        assertThat(layout.getSecondaryToolbarButton()).isNull();
+        View backButtonParent = (View) layout.getBackButton().getParent();
+        assertThat(backButtonParent.getTouchDelegate()).isNull();
+
+        MotionEvent down = MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 0, 0, 0);
+        layout.dispatchTouchEvent(down);
+        down.recycle();
+
+        assertThat(layout.getSecondaryToolbarButton()).isNotNull();
+        TestHelper.assertViewNotVisible(layout.getSecondaryToolbarButton());
+        assertThat(backButtonParent.getTouchDelegate()).isNotNull();
+    }
+
     @Test
     public void testApplyUpdatedLocale() {
         mCarSetupWizardCompatLayout.applyLocale(LOCALE_IW_IL);
@@ -501,6 +625,220 @@ public class CarSetupWizardCompatLayoutTest extends BaseRobolectricTest {
                 .isEqualTo(getDrawbleDefaultColor(expected));
     }
 
+    /**
+     * Test that {@link CarSetupWizardCompatLayout#applyPartnerConfig} resets the back icon and
+     * toolbar background to the library defaults once the partner no longer configures them.
+     */
+    @Test
+    public void testApplyPartnerConfig_removedConfigs_resetsToDefaults() {
+        ImageView backButton = (ImageView) mCarSetupWizardCompatLayout.getBackButton();
+        View titleBar = mCarSetupWizardCompatLayout.findViewById(R.id.application_bar);
+        backButton.setImageDrawable(new ColorDrawable(Color.RED));
+        ColorDrawable staleBackground = new ColorDrawable(Color.RED);
+        titleBar.setBackground(staleBackground);
+
+        mCarSetupWizardCompatLayout.applyPartnerConfig(EnumSet.of(
+                PartnerConfig.CONFIG_TOOLBAR_BUTTON_ICON_BACK,
+                PartnerConfig.CONFIG_TOOLBAR_BG_COLOR));
+
+        assertThat(Shadows.shadowOf(backButton.getDrawable()).getCreatedFromResId())
+                .isEqualTo(R.drawable.car_ic_arrow_back);
+        assertThat(titleBar.getBackground()).isNotSameInstanceAs(staleBackground);
+    }
+
+    @Test
+    public void testCommitUnchangedState_doesNotRequestLayout() {
+        LayoutRequestCounter counter = new LayoutRequestCounter();
+        CarSetupWizardCompatLayout layout = createLaidOutLayout(counter);
+
+        layout.beginUpdate();
+        layout.setToolbarTitleText("title");
+        layout.setPrimaryToolbarButtonText("next");
+        layout.setPrimaryToolbarButtonEnabled(true);
+        layout.setProgressBarVisible(false);
+        layout.commit();
+
+        assertThat(counter.mLayoutRequests).isEqualTo(0);
+    }
+
+    @Test
+    public void testCommitChangedState_requestsFewerLayoutsThanUnbatched() {
+        LayoutRequestCounter unbatchedCounter = new LayoutRequestCounter();
+        applyRepeatedChanges(createLaidOutLayout(unbatchedCounter));
+        LayoutRequestCounter batchedCounter = new LayoutRequestCounter();
+        CarSetupWizardCompatLayout layout = createLaidOutLayout(batchedCounter);
+
+        layout.beginUpdate();
+        applyRepeatedChanges(layout);
+        assertThat(layout.getToolbarTitle().getText().toString()).isEqualTo("title");
+        layout.commit();
+
+        assertThat(batchedCounter.mLayoutRequests).isGreaterThan(0);
+        assertThat(batchedCounter.mLayoutRequests).isLessThan(unbatchedCounter.mLayoutRequests);
+        assertThat(layout.getToolbarTitle().getText().toString()).isEqualTo("other title");
+        assertThat(layout.getPrimaryToolbarButton().getText().toString()).isEqualTo("other text");
+        assertThat(layout.getPrimaryToolbarButton().isEnabled()).isFalse();
+        TestHelper.assertViewVisible(layout.getSecondaryToolbarButton());
+        TestHelper.assertViewVisible(layout.getProgressBar());
+    }
+
+    @Test
+    public void testCommit_appliesLastRequestedValue() {
+        mCarSetupWizardCompatLayout.beginUpdate();
+        mCarSetupWizardCompatLayout.setProgressBarProgress(50);
+        mCarSetupWizardCompatLayout.setProgressBarIndeterminate(true);
+        mCarSetupWizardCompatLayout.setPrimaryToolbarButtonText("first");
+        mCarSetupWizardCompatLayout.setPrimaryToolbarButtonText("last");
+        mCarSetupWizardCompatLayout.commit();
+
+        assertThat(mCarSetupWizardCompatLayout.getProgressBar().isIndeterminate()).isTrue();
+        assertThat(mCarSetupWizardCompatLayout.getProgressBar().getProgress()).isEqualTo(50);
+        assertThat(mCarSetupWizardCompatLayout.getPrimaryToolbarButton().getText().toString())
+                .isEqualTo("last");
+    }
+
+    @Test
+    public void testNestedUpdates_applyOnOutermostCommit() {
+        mCarSetupWizardCompatLayout.beginUpdate();
+        mCarSetupWizardCompatLayout.beginUpdate();
+        mCarSetupWizardCompatLayout.setToolbarTitleText("nested");
+        mCarSetupWizardCompatLayout.commit();
+
+        assertThat(mCarSetupWizardCompatLayout.getToolbarTitle().getText().toString())
+                .isNotEqualTo("nested");
+
+        mCarSetupWizardCompatLayout.commit();
+
+        assertThat(mCarSetupWizardCompatLayout.getToolbarTitle().getText().toString())
+                .isEqualTo("nested");
+    }
+
+    @Test
+    public void testCommit_secondaryButtonVisibleThenListener_showsButton() {
+        CarSetupWizardCompatLayout layout = createCarSetupWizardCompatLayout();
+        View.OnClickListener listener = TestHelper.createSpyListener();
+
+        layout.beginUpdate();
+        layout.setSecondaryToolbarButtonVisible(true);
+        // Inflates the secondary button, hidden, inside the batch.
+        layout.setSecondaryToolbarButtonListener(listener);
+        layout.commit();
+
+        TestHelper.assertViewVisible(layout.getSecondaryToolbarButton());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCommitWithoutBeginUpdate_throws() {
+        mCarSetupWizardCompatLayout.commit();
+    }
+
+    /** Changes the title, buttons and progress bar, some of them more than once. */
+    private static void applyRepeatedChanges(CarSetupWizardCompatLayout layout) {
+        layout.setToolbarTitleText("first title");
+        layout.setToolbarTitleText("other title");
+        layout.setPrimaryToolbarButtonText("first text");
+        layout.setPrimaryToolbarButtonText("other text");
+        layout.setPrimaryToolbarButtonEnabled(false);
+        layout.setSecondaryToolbarButtonVisible(true);
+        layout.setProgressBarVisible(true);
+        layout.setProgressBarVisible(false);
+        layout.setProgressBarVisible(true);
+    }
+
+    /**
+     * Creates a laid out layout, with its title and primary button text set, whose layout
+     * requests and progress updates made after that are counted by {@code counter}.
+     */
+    private static CarSetupWizardCompatLayout createLaidOutLayout(LayoutRequestCounter counter) {
+        CarSetupWizardCompatLayout layout = new CarSetupWizardCompatLayout(counter) {
+            @Override
+            public void requestLayout() {
+                super.requestLayout();
+                counter.mLayoutRequests++;
+            }
+        };
+        layout.setToolbarTitleText("title");
+        layout.setPrimaryToolbarButtonText("next");
+        layout.measure(
+                View.MeasureSpec.makeMeasureSpec(1000, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1000, View.MeasureSpec.EXACTLY));
+        layout.layout(0, 0, 1000, 1000);
+        counter.mLayoutRequests = 0;
+        counter.mProgressUpdates = 0;
+        return layout;
+    }
+
+    /**
+     * A context whose inflater creates the views changed by the toolbar setters as subclasses
+     * counting their own layout requests. Unlike a parent, which only hears of the first request
+     * until it is laid out again, this sees every request. Also counts the progress bar updates.
+     */
+    private static class LayoutRequestCounter extends ContextWrapper
+            implements LayoutInflater.Factory2 {
+        int mLayoutRequests;
+        int mProgressUpdates;
+        private LayoutInflater mInflater;
+
+        LayoutRequestCounter() {
+            super(application);
+        }
+
+        @Override
+        public Object getSystemService(String name) {
+            if (!Context.LAYOUT_INFLATER_SERVICE.equals(name)) {
+                return super.getSystemService(name);
+            }
+            if (mInflater == null) {
+                mInflater = LayoutInflater.from(getBaseContext()).cloneInContext(this);
+                mInflater.setFactory2(this);
+            }
+            return mInflater;
+        }
+
+        @Override
+        public View onCreateView(View parent, String name, Context context, AttributeSet attrs) {
+            switch (name) {
+                case "TextView":
+                    return new TextView(context, attrs) {
+                        @Override
+                        public void requestLayout() {
+                            super.requestLayout();
+                            mLayoutRequests++;
+                        }
+                    };
+                case "Button":
+                    return new Button(context, attrs) {
+                        @Override
+                        public void requestLayout() {
+                            super.requestLayout();
+                            mLayoutRequests++;
+                        }
+                    };
+                case "ProgressBar":
+                    return new ProgressBar(context, attrs) {
+                        @Override
+                        public void requestLayout() {
+                            super.requestLayout();
+                            mLayoutRequests++;
+                        }
+
+                        @Override
+                        public synchronized void setProgress(int progress) {
+                            super.setProgress(progress);
+                            mProgressUpdates++;
+                        }
+                    };
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        public View onCreateView(String name, Context context, AttributeSet attrs) {
+            return onCreateView(null, name, context, attrs);
+        }
+    }
+
     private void setupFakeContentProvider() {
         FakeOverrideContentProvider.installDefaultProvider();
     }
@@ -514,6 +852,15 @@ public class CarSetupWizardCompatLayoutTest extends BaseRobolectricTest {
         return activity.findViewById(R.id.car_setup_wizard_layout);
     }
 
+    private CarSetupWizardCompatLayout createAttachedCarSetupWizardCompatLayout() {
+        Activity activity = Robolectric
+                .buildActivity(CarSetupWizardLayoutTestActivity.class)
+                .setup()
+                .get();
+
+        return activity.findViewById(R.id.car_setup_wizard_layout);
+    }
+
     private @ColorRes int getDrawbleDefaultColor(Drawable drawable) {
         Drawable.ConstantState state = drawable.getConstantState();
         ColorStateList colorStateList = ReflectionHelpers.getField(state, "mColor");
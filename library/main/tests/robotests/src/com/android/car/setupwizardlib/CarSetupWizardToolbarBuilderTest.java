@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.RuntimeEnvironment.application;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewGroup.MarginLayoutParams;
+import android.view.ViewStub;
+import android.widget.Button;
+
+import com.android.car.setupwizardlib.partner.FakeOverrideContentProvider;
+import com.android.car.setupwizardlib.partner.PartnerConfigHelper;
+import com.android.car.setupwizardlib.partner.PartnerConfigSnapshot;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Unit tests for {@link CarSetupWizardToolbarBuilder}. */
+@RunWith(RobolectricTestRunner.class)
+public class CarSetupWizardToolbarBuilderTest {
+
+    private static final int TEST_WIDTH = 1280;
+    private static final int TEST_HEIGHT = 720;
+
+    private PartnerConfigSnapshot mSnapshot;
+
+    @Before
+    public void setUp() {
+        FakeOverrideContentProvider.installDefaultProvider();
+        mSnapshot = PartnerConfigHelper.get(application).getSnapshot(application);
+    }
+
+    @Test
+    public void buildToolbar_shouldMatchInflatedToolbar() {
+        CarSetupWizardToolbar built =
+                new CarSetupWizardToolbarBuilder(application, mSnapshot).buildToolbar();
+
+        assertThat(describe(built, /* withBounds= */ false))
+                .isEqualTo(describe(inflateToolbar(), /* withBounds= */ false));
+    }
+
+    @Test
+    public void buildButton_shouldMatchInflatedButton() {
+        CarSetupWizardToolbarBuilder builder =
+                new CarSetupWizardToolbarBuilder(application, mSnapshot);
+        View toolbar = inflateToolbarWithButtons();
+        Button inflated = toolbar.findViewById(R.id.primary_toolbar_button);
+
+        Button built = builder.buildButton(ButtonStyle.Variant.PRIMARY);
+
+        assertThat(built.getClass()).isEqualTo(inflated.getClass());
+        assertThat(built.getMinHeight()).isEqualTo(inflated.getMinHeight());
+        assertThat(built.getEllipsize()).isEqualTo(inflated.getEllipsize());
+        assertThat(built.getMaxLines()).isEqualTo(inflated.getMaxLines());
+        assertThat(describeLayoutParams(built)).isEqualTo(describeLayoutParams(inflated));
+        assertThat(built.getTag(R.id.button_style))
+                .isSameInstanceAs(ButtonStyle.get(mSnapshot, ButtonStyle.Variant.PRIMARY));
+    }
+
+    @Test
+    public void buildButton_secondary_shouldTakeStubLayoutParams() {
+        Button built = new CarSetupWizardToolbarBuilder(application, mSnapshot)
+                .buildButton(ButtonStyle.Variant.SECONDARY);
+        Button inflated = inflateToolbarWithButtons().findViewById(R.id.secondary_toolbar_button);
+
+        assertThat(describeLayoutParams(built)).isEqualTo(describeLayoutParams(inflated));
+    }
+
+    @Test
+    public void buildButton_withInflaterFactory_shouldLetFactoryCreateIt() {
+        ContextThemeWrapper context = new ContextThemeWrapper(application, application.getTheme());
+        LayoutInflater.from(context).setFactory2(new ButtonFactory());
+
+        Button built = new CarSetupWizardToolbarBuilder(context, mSnapshot)
+                .buildButton(ButtonStyle.Variant.PRIMARY);
+
+        assertThat(built).isInstanceOf(FactoryButton.class);
+        assertThat(built.getTag(R.id.button_style))
+                .isSameInstanceAs(ButtonStyle.get(mSnapshot, ButtonStyle.Variant.PRIMARY));
+    }
+
+    @Test
+    public void baseLayout_buildToolbarInCode_shouldLayOutLikeInflatedToolbar() {
+        ViewGroup built = layOutToolbar(/* buildToolbarInCode= */ true);
+        ViewGroup inflated = layOutToolbar(/* buildToolbarInCode= */ false);
+
+        assertThat(describe(built, /* withBounds= */ true))
+                .isEqualTo(describe(inflated, /* withBounds= */ true));
+    }
+
+    @Test
+    public void baseLayout_buildToolbarInCode_shouldOrderButtons() {
+        AttributeSet attrs = Robolectric.buildAttributeSet()
+                .addAttribute(R.attr.buildToolbarInCode, "true")
+                .addAttribute(R.attr.showSecondaryToolbarButton, "true")
+                .build();
+        CarSetupWizardCompatLayout layout = new CarSetupWizardCompatLayout(application, attrs);
+
+        ViewGroup toolbar = (ViewGroup) layout.findViewById(R.id.application_bar);
+        assertThat(toolbar).isInstanceOf(CarSetupWizardToolbar.class);
+        assertThat(toolbar.indexOfChild(layout.getSecondaryToolbarButton()))
+                .isLessThan(toolbar.indexOfChild(layout.getPrimaryToolbarButton()));
+        assertThat(layout.getPrimaryToolbarButton().getId())
+                .isEqualTo(R.id.primary_toolbar_button);
+    }
+
+    private View inflateToolbarWithButtons() {
+        View toolbar = PartnerStyledInflater.create(application, mSnapshot, null)
+                .inflate(R.layout.car_setup_wizard_flat_toolbar, null);
+        inflateStub(toolbar, R.id.secondary_toolbar_button_stub, ButtonStyle.Variant.SECONDARY);
+        inflateStub(toolbar, R.id.primary_toolbar_button_stub, ButtonStyle.Variant.PRIMARY);
+        return toolbar;
+    }
+
+    private void inflateStub(View toolbar, int stubId, ButtonStyle.Variant variant) {
+        ViewStub stub = toolbar.findViewById(stubId);
+        stub.setLayoutInflater(PartnerStyledInflater.create(application, mSnapshot, variant));
+        stub.inflate();
+    }
+
+    private static CarSetupWizardToolbar inflateToolbar() {
+        return (CarSetupWizardToolbar) LayoutInflater.from(application)
+                .inflate(R.layout.car_setup_wizard_flat_toolbar, null);
+    }
+
+    /** Returns the flat toolbar of a laid out layout with both toolbar buttons. */
+    private static ViewGroup layOutToolbar(boolean buildToolbarInCode) {
+        AttributeSet attrs = Robolectric.buildAttributeSet()
+                .addAttribute(R.attr.flattenToolbar, "true")
+                .addAttribute(R.attr.buildToolbarInCode, String.valueOf(buildToolbarInCode))
+                .addAttribute(R.attr.showPrimaryToolbarButton, "true")
+                .addAttribute(R.attr.primaryToolbarButtonText, "Next")
+                .addAttribute(R.attr.showSecondaryToolbarButton, "true")
+                .addAttribute(R.attr.secondaryToolbarButtonText, "Skip")
+                .build();
+        CarSetupWizardCompatLayout layout = new CarSetupWizardCompatLayout(application, attrs);
+        layout.measure(
+                View.MeasureSpec.makeMeasureSpec(TEST_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(TEST_HEIGHT, View.MeasureSpec.EXACTLY));
+        layout.layout(0, 0, TEST_WIDTH, TEST_HEIGHT);
+        return layout.findViewById(R.id.application_bar);
+    }
+
+    /**
+     * Describes the children of {@code toolbar} other than button stubs by id: their class, layout
+     * params and, if {@code withBounds}, their bounds. Ordered by id, since the toolbar positions
+     * its children by id rather than by index.
+     */
+    private static Map<Integer, String> describe(ViewGroup toolbar, boolean withBounds) {
+        Map<Integer, String> children = new TreeMap<>();
+        for (int i = 0; i < toolbar.getChildCount(); i++) {
+            View child = toolbar.getChildAt(i);
+            if (child instanceof ViewStub) {
+                continue;
+            }
+            String description = child.getClass().getName() + " " + describeLayoutParams(child);
+            if (withBounds) {
+                description += String.format(" [%d,%d][%d,%d]", child.getLeft(), child.getTop(),
+                        child.getRight(), child.getBottom());
+            }
+            children.put(child.getId(), description);
+        }
+        return children;
+    }
+
+    private static String describeLayoutParams(View view) {
+        MarginLayoutParams params = (MarginLayoutParams) view.getLayoutParams();
+        return String.format("%dx%d margins(%d,%d,%d,%d)", params.width, params.height,
+                params.getMarginStart(), params.topMargin, params.getMarginEnd(),
+                params.bottomMargin);
+    }
+
+    /** Creates its own button class, like the AppCompat factory does. */
+    private static final class ButtonFactory implements LayoutInflater.Factory2 {
+        @Override
+        public View onCreateView(
+                View parent, String name, Context context, AttributeSet attrs) {
+            return "Button".equals(name) ? new FactoryButton(context, attrs) : null;
+        }
+
+        @Override
+        public View onCreateView(String name, Context context, AttributeSet attrs) {
+            return onCreateView(null, name, context, attrs);
+        }
+    }
+
+    private static final class FactoryButton extends Button {
+        FactoryButton(Context context, AttributeSet attrs) {
+            super(context, attrs);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.RuntimeEnvironment.application;
+
+import android.content.res.Resources;
+import android.util.AttributeSet;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewStub;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link CarSetupWizardToolbar}. */
+@RunWith(RobolectricTestRunner.class)
+public class CarSetupWizardToolbarTest {
+
+    private static final int TOOLBAR_WIDTH = 1000;
+
+    private CarSetupWizardToolbar mToolbar;
+    private View mBackButton;
+    private View mToolbarTitle;
+    private View mPrimaryButton;
+    private int mBackButtonSlotWidth;
+    private int mButtonsMarginEnd;
+
+    @Before
+    public void setUp() {
+        mToolbar = (CarSetupWizardToolbar) LayoutInflater.from(application)
+                .inflate(R.layout.car_setup_wizard_flat_toolbar, null);
+        ((ViewStub) mToolbar.findViewById(R.id.primary_toolbar_button_stub)).inflate();
+        mBackButton = mToolbar.findViewById(R.id.back_button);
+        mToolbarTitle = mToolbar.findViewById(R.id.toolbar_title);
+        mPrimaryButton = mToolbar.findViewById(R.id.primary_toolbar_button);
+
+        Resources resources = application.getResources();
+        mBackButtonSlotWidth = resources.getDimensionPixelSize(R.dimen.car_margin);
+        mButtonsMarginEnd = resources.getDimensionPixelSize(R.dimen.car_keyline_1);
+    }
+
+    @Test
+    public void layout_shouldPlaceBackButtonTitleAndButtons() {
+        layoutToolbar();
+
+        assertThat(mBackButton.getLeft())
+                .isEqualTo((mBackButtonSlotWidth - mBackButton.getWidth()) / 2);
+        assertThat(mToolbarTitle.getLeft()).isEqualTo(mBackButtonSlotWidth);
+        assertThat(mPrimaryButton.getRight()).isEqualTo(TOOLBAR_WIDTH - mButtonsMarginEnd);
+        assertThat(mToolbarTitle.getRight()).isAtMost(mPrimaryButton.getLeft());
+    }
+
+    @Test
+    public void layout_rtl_shouldMirror() {
+        mToolbar.setLayoutDirection(View.LAYOUT_DIRECTION_RTL);
+
+        layoutToolbar();
+
+        assertThat(mBackButton.getRight()).isEqualTo(
+                TOOLBAR_WIDTH - (mBackButtonSlotWidth - mBackButton.getWidth()) / 2);
+        assertThat(mToolbarTitle.getRight()).isEqualTo(TOOLBAR_WIDTH - mBackButtonSlotWidth);
+        assertThat(mPrimaryButton.getLeft()).isEqualTo(mButtonsMarginEnd);
+    }
+
+    @Test
+    public void layout_goneBackButton_shouldKeepTitlePosition() {
+        mBackButton.setVisibility(View.GONE);
+
+        layoutToolbar();
+
+        assertThat(mToolbarTitle.getLeft()).isEqualTo(mBackButtonSlotWidth);
+    }
+
+    @Test
+    public void baseLayout_flattenToolbar_shouldKeepApi() {
+        AttributeSet attrs = Robolectric.buildAttributeSet()
+                .addAttribute(R.attr.flattenToolbar, "true")
+                .build();
+        CarSetupWizardCompatLayout layout = new CarSetupWizardCompatLayout(application, attrs);
+
+        assertThat(layout.getPrimaryToolbarButton().getParent())
+                .isInstanceOf(CarSetupWizardToolbar.class);
+
+        layout.setPrimaryToolbarButtonFlat(true);
+
+        assertThat(layout.getPrimaryToolbarButtonFlat()).isTrue();
+        assertThat(layout.getPrimaryToolbarButton().getParent())
+                .isInstanceOf(CarSetupWizardToolbar.class);
+    }
+
+    private void layoutToolbar() {
+        mToolbar.measure(
+                View.MeasureSpec.makeMeasureSpec(TOOLBAR_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        mToolbar.layout(0, 0, mToolbar.getMeasuredWidth(), mToolbar.getMeasuredHeight());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.RuntimeEnvironment.application;
+
+import android.graphics.Rect;
+import android.graphics.Region;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.accessibility.AccessibilityNodeInfo.TouchDelegateInfo;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link ExpandedTouchDelegate}. */
+@RunWith(RobolectricTestRunner.class)
+public class ExpandedTouchDelegateTest {
+
+    private static final int EXPANSION = 10;
+
+    private FrameLayout mParent;
+    private View mView;
+    private ExpandedTouchDelegate mTouchDelegate;
+
+    @Before
+    public void setUp() {
+        mParent = new FrameLayout(application);
+        mView = new View(application);
+        mParent.addView(mView);
+        mParent.layout(0, 0, 200, 200);
+        mView.layout(50, 50, 70, 70);
+        mTouchDelegate = new ExpandedTouchDelegate(mView, EXPANSION);
+        mParent.setTouchDelegate(mTouchDelegate);
+    }
+
+    @Test
+    public void bounds_shouldExpandHitRect() {
+        assertThat(mTouchDelegate.getBounds()).isEqualTo(new Rect(40, 40, 80, 80));
+    }
+
+    @Test
+    public void bounds_shouldFollowLayout() {
+        Rect bounds = mTouchDelegate.getBounds();
+
+        mView.layout(100, 100, 120, 120);
+
+        assertThat(mTouchDelegate.getBounds()).isSameInstanceAs(bounds);
+        assertThat(bounds).isEqualTo(new Rect(90, 90, 130, 130));
+    }
+
+    @Test
+    public void getTouchDelegateInfo_shouldReportCurrentBounds() {
+        mView.layout(100, 100, 120, 120);
+
+        TouchDelegateInfo info = mTouchDelegate.getTouchDelegateInfo();
+
+        assertThat(info.getRegionCount()).isEqualTo(1);
+        Region region = info.getRegionAt(0);
+        assertThat(region.getBounds()).isEqualTo(new Rect(90, 90, 130, 130));
+    }
+
+    @Test
+    public void onTouchEvent_inExpandedArea_shouldDelegate() {
+        assertThat(tap(42, 42)).isTrue();
+    }
+
+    @Test
+    public void onTouchEvent_viewHidden_shouldNotDelegate() {
+        mView.setVisibility(View.GONE);
+
+        assertThat(tap(42, 42)).isFalse();
+    }
+
+    @Test
+    public void onTouchEvent_outsideExpandedArea_shouldNotDelegate() {
+        assertThat(tap(20, 20)).isFalse();
+    }
+
+    /** Taps at the given point of the parent and returns whether the view got the touch. */
+    private boolean tap(float x, float y) {
+        boolean[] touched = new boolean[1];
+        mView.setOnTouchListener((view, event) -> {
+            touched[0] = true;
+            return true;
+        });
+        long time = SystemClock.uptimeMillis();
+        MotionEvent down = MotionEvent.obtain(time, time, MotionEvent.ACTION_DOWN, x, y, 0);
+        MotionEvent up = MotionEvent.obtain(time, time, MotionEvent.ACTION_UP, x, y, 0);
+        mTouchDelegate.onTouchEvent(down);
+        mTouchDelegate.onTouchEvent(up);
+        down.recycle();
+        up.recycle();
+        return touched[0];
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.RuntimeEnvironment.application;
+
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Unit tests for {@link IdleWorkScheduler}. */
+@RunWith(RobolectricTestRunner.class)
+public class IdleWorkSchedulerTest {
+
+    private final List<String> mRuns = new ArrayList<>();
+    private final Runnable mFirst = () -> mRuns.add("first");
+    private final Runnable mSecond = () -> mRuns.add("second");
+
+    private IdleWorkScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mScheduler = new IdleWorkScheduler(new View(application));
+    }
+
+    @Test
+    public void schedule_shouldNotRunTask() {
+        mScheduler.schedule(mFirst);
+
+        assertThat(mRuns).isEmpty();
+        assertThat(mScheduler.hasPendingTasks()).isTrue();
+    }
+
+    @Test
+    public void schedule_sameTaskTwice_shouldRunItOnce() {
+        mScheduler.schedule(mFirst);
+        mScheduler.schedule(mFirst);
+
+        mScheduler.runPendingTasks();
+
+        assertThat(mRuns).containsExactly("first");
+    }
+
+    @Test
+    public void queueIdle_shouldRunOneTaskInOrder() {
+        mScheduler.schedule(mFirst);
+        mScheduler.schedule(mSecond);
+
+        mScheduler.queueIdle();
+
+        assertThat(mRuns).containsExactly("first");
+        assertThat(mScheduler.hasPendingTasks()).isTrue();
+    }
+
+    @Test
+    public void queueIdle_lastTask_shouldUnregister() {
+        mScheduler.schedule(mFirst);
+
+        assertThat(mScheduler.queueIdle()).isFalse();
+        assertThat(mScheduler.hasPendingTasks()).isFalse();
+    }
+
+    @Test
+    public void create_offLooperThread_shouldNotThrow() throws InterruptedException {
+        View host = new View(application);
+        Throwable[] thrown = new Throwable[1];
+
+        Thread worker = new Thread(() -> {
+            try {
+                new IdleWorkScheduler(host).schedule(mFirst);
+            } catch (Throwable throwable) {
+                thrown[0] = throwable;
+            }
+        });
+        worker.start();
+        worker.join();
+
+        assertThat(thrown[0]).isNull();
+    }
+
+    @Test
+    public void runPendingTasks_shouldRunTasksTheyScheduleToo() {
+        mScheduler.schedule(() -> {
+            mRuns.add("outer");
+            mScheduler.schedule(mSecond);
+        });
+
+        mScheduler.runPendingTasks();
+
+        assertThat(mRuns).containsExactly("outer", "second").inOrder();
+        assertThat(mScheduler.hasPendingTasks()).isFalse();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.RuntimeEnvironment.application;
+
+import android.widget.Button;
+
+import com.android.car.setupwizardlib.partner.FakeOverrideContentProvider;
+import com.android.car.setupwizardlib.partner.PartnerConfigHelper;
+import com.android.car.setupwizardlib.partner.PartnerConfigSnapshot;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link PartnerStyledInflater}. */
+@RunWith(RobolectricTestRunner.class)
+public class PartnerStyledInflaterTest {
+
+    private PartnerConfigSnapshot mSnapshot;
+
+    @Before
+    public void setUp() {
+        FakeOverrideContentProvider.installDefaultProvider();
+        mSnapshot = PartnerConfigHelper.get(application).getSnapshot(application);
+    }
+
+    @Test
+    public void inflate_withButtonVariant_shouldStyleButtonOnCreation() {
+        Button button = (Button) PartnerStyledInflater
+                .create(application, mSnapshot, ButtonStyle.Variant.PRIMARY)
+                .inflate(R.layout.primary_button, null);
+
+        assertThat(button.getTag(R.id.button_style))
+                .isSameInstanceAs(ButtonStyle.get(mSnapshot, ButtonStyle.Variant.PRIMARY));
+        assertThat(button.getPaddingLeft())
+                .isEqualTo(FakeOverrideContentProvider.DEFAULT_H_PADDING);
+        assertThat(button.getTextSize()).isEqualTo(FakeOverrideContentProvider.DEFAULT_DIMENSION);
+    }
+
+    @Test
+    public void inflate_withoutButtonVariant_shouldLeaveButtonAsIs() {
+        Button button = (Button) PartnerStyledInflater.create(application, mSnapshot, null)
+                .inflate(R.layout.primary_button, null);
+
+        assertThat(button.getTag(R.id.button_style)).isNull();
+    }
+
+    @Test
+    public void inflate_toolbarButtonStub_shouldInflateStyledButton() {
+        CarSetupWizardCompatLayout layout = new CarSetupWizardCompatLayout(application);
+
+        assertThat(layout.getPrimaryToolbarButton().getTag(R.id.button_style))
+                .isSameInstanceAs(ButtonStyle.get(
+                        layout.getPartnerConfigSnapshot(), ButtonStyle.Variant.PRIMARY));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.RuntimeEnvironment.application;
+
+import android.view.View;
+import android.widget.ScrollView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+
+/** Unit tests for {@link TitleBarElevationController}. */
+@RunWith(RobolectricTestRunner.class)
+public class TitleBarElevationControllerTest {
+
+    private static final float ELEVATION = 8f;
+    private static final int VIEWPORT_HEIGHT = 100;
+
+    private View mTitleBar;
+    private TitleBarElevationController mController;
+    private ScrollView mScrollView;
+
+    @Before
+    public void setUp() {
+        mTitleBar = new View(application);
+        mController = new TitleBarElevationController(mTitleBar, ELEVATION);
+
+        mScrollView = new ScrollView(application);
+        View content = new View(application);
+        content.setMinimumHeight(VIEWPORT_HEIGHT * 10);
+        mScrollView.addView(content);
+        mScrollView.measure(
+                View.MeasureSpec.makeMeasureSpec(VIEWPORT_HEIGHT, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(VIEWPORT_HEIGHT, View.MeasureSpec.EXACTLY));
+        mScrollView.layout(0, 0, VIEWPORT_HEIGHT, VIEWPORT_HEIGHT);
+    }
+
+    @Test
+    public void setElevated_notAnimated_shouldSetElevation() {
+        mController.setElevated(true, /* animate= */ false);
+        assertThat(mTitleBar.getElevation()).isEqualTo(ELEVATION);
+
+        mController.setElevated(false, /* animate= */ false);
+        assertThat(mTitleBar.getElevation()).isEqualTo(0f);
+    }
+
+    @Test
+    public void setElevated_animatedThenNot_shouldEndAtLastTarget() {
+        mController.setElevated(true, /* animate= */ true);
+        mController.setElevated(false, /* animate= */ false);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertThat(mTitleBar.getElevation()).isEqualTo(0f);
+        assertThat(mController.isElevated()).isFalse();
+    }
+
+    @Test
+    public void attachTo_scrollPastTop_shouldElevate() {
+        mController.attachTo(mScrollView);
+
+        scrollTo(VIEWPORT_HEIGHT);
+
+        assertThat(mController.isElevated()).isTrue();
+    }
+
+    @Test
+    public void attachTo_scrollBackToTop_shouldLower() {
+        mController.attachTo(mScrollView);
+        scrollTo(VIEWPORT_HEIGHT);
+
+        scrollTo(0);
+
+        assertThat(mController.isElevated()).isFalse();
+    }
+
+    @Test
+    public void detach_shouldStopFollowingScroll() {
+        mController.attachTo(mScrollView);
+        mController.detach();
+
+        scrollTo(VIEWPORT_HEIGHT);
+
+        assertThat(mController.isElevated()).isFalse();
+    }
+
+    @Test
+    public void attachToAndDetach_shouldKeepPageScrollListener() {
+        int[] scrollChanges = new int[1];
+        mScrollView.setOnScrollChangeListener(
+                (view, scrollX, scrollY, oldScrollX, oldScrollY) -> scrollChanges[0]++);
+
+        mController.attachTo(mScrollView);
+        scrollTo(VIEWPORT_HEIGHT);
+        mController.detach();
+        scrollTo(0);
+
+        assertThat(scrollChanges[0]).isEqualTo(2);
+    }
+
+    private void scrollTo(int scrollY) {
+        mScrollView.scrollTo(0, scrollY);
+        // The view tree reports scroll changes on its next draw, which tests don't run.
+        ReflectionHelpers.callInstanceMethod(
+                mScrollView.getViewTreeObserver(), "dispatchOnScrollChanged");
+    }
+}
@@ -71,6 +71,7 @@ class ExternalResources {
         private final String mPackageName;
         private final Map<Integer, TypedResource<?>> mOverrideResources = new HashMap<>();
         private final Map<ResName, Integer> mResourceIds = new HashMap<>();
+        private final Map<Integer, Integer> mChangingConfigurations = new HashMap<>();
         private int mNextId = 1;
 
         public static Resources forPackageName(String packageName) {
@@ -108,6 +109,7 @@ class ExternalResources {
                 } else if (override instanceof Integer) {
                     outValue.data = (int) override;
                 }
+                outValue.changingConfigurations = mChangingConfigurations.getOrDefault(id, 0);
                 return;
             }
             throw new NotFoundException();
@@ -125,6 +127,16 @@ class ExternalResources {
                     new TypedResource<>(value, resType, null));
         }
 
+        /**
+         * Sets the configuration changes reported by {@link #getValue} for a resource, as if it
+         * had variants for those qualifiers.
+         */
+        public void putChangingConfigurations(
+                String name, String defaultType, int changingConfigurations) {
+            mChangingConfigurations.put(
+                    getIdentifier(name, defaultType, mPackageName), changingConfigurations);
+        }
+
         @Override
         public int getInteger(int id) {
             return (int) get(id, ResType.INTEGER);
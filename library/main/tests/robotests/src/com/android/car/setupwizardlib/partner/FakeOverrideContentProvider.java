@@ -23,6 +23,7 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.text.TextUtils;
 
 import androidx.annotation.ColorRes;
@@ -31,6 +32,10 @@ import com.android.car.setupwizardlib.R;
 
 import org.robolectric.Robolectric;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
 /**
  * An implementation of
  * {@link com.google.android.car.setupwizard.partner.PartnerCustomizationProvider} for
@@ -46,6 +51,8 @@ public class FakeOverrideContentProvider extends ContentProvider {
     private static final String TEST_PACKAGE_NAME = "test.packageName";
 
     private final Bundle mFakeProviderResultBundle = new Bundle();
+    private boolean mServeCompactConfig;
+    private boolean mIgnoreRequestedKeys;
 
     public FakeOverrideContentProvider injectResourceEntry(ResourceEntry resourceEntry) {
         mFakeProviderResultBundle.putBundle(resourceEntry.getResourceName(),
@@ -53,6 +60,18 @@ public class FakeOverrideContentProvider extends ContentProvider {
         return this;
     }
 
+    /** Replies in the compact format to clients that request it. */
+    public FakeOverrideContentProvider serveCompactConfig() {
+        mServeCompactConfig = true;
+        return this;
+    }
+
+    /** Replies with every key like providers predating the requested keys. */
+    public FakeOverrideContentProvider ignoreRequestedKeys() {
+        mIgnoreRequestedKeys = true;
+        return this;
+    }
+
     public static FakeOverrideContentProvider installEmptyProvider() {
         PartnerConfigHelper.resetForTesting();
         return Robolectric.setupContentProvider(
@@ -168,8 +187,38 @@ public class FakeOverrideContentProvider extends ContentProvider {
     @Override
     public Bundle call(String method, String arg, Bundle extras) {
         if (TextUtils.equals(method, PartnerConfigHelper.SUW_GET_PARTNER_CONFIG_METHOD)) {
-            return mFakeProviderResultBundle;
+            Bundle resultBundle = mFakeProviderResultBundle;
+            if (!mIgnoreRequestedKeys && extras != null
+                    && extras.containsKey(PartnerConfigProtocol.EXTRA_REQUESTED_KEYS)) {
+                resultBundle = new Bundle();
+                for (String key : mFakeProviderResultBundle.keySet()) {
+                    if (PartnerConfigProtocol.isKeyRequested(extras, key)) {
+                        resultBundle.putBundle(key, mFakeProviderResultBundle.getBundle(key));
+                    }
+                }
+            }
+            if (mServeCompactConfig && extras != null
+                    && extras.containsKey(PartnerConfigProtocol.EXTRA_COMPACT_FORMAT_VERSION)) {
+                return createCompactReply(resultBundle);
+            }
+            return resultBundle;
         }
         return null;
     }
+
+    private Bundle createCompactReply(Bundle resultBundle) {
+        try {
+            File file = File.createTempFile("compact_config", null, application.getCacheDir());
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(PartnerConfigProtocol.encode(resultBundle));
+            }
+            Bundle reply = new Bundle();
+            reply.putParcelable(
+                    PartnerConfigProtocol.KEY_COMPACT_CONFIG_FD,
+                    ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY));
+            return reply;
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.RuntimeEnvironment.application;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.pm.PackageInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.EnumSet;
+
+/** Unit tests for {@link PartnerConfigDiskCache}. */
+@RunWith(RobolectricTestRunner.class)
+public final class PartnerConfigDiskCacheTest {
+    private static final String TEST_PACKAGE_NAME = "test.packageName";
+    private static final int TEST_RESOURCE_ID = 1234;
+
+    private PartnerConfigDiskCache mDiskCache;
+    private PartnerConfigTable mConfigTable;
+
+    @Before
+    public void setUp() {
+        ExternalResources.injectExternalResources(TEST_PACKAGE_NAME);
+        mDiskCache = new PartnerConfigDiskCache(
+                application, EnumSet.allOf(PartnerConfig.class));
+
+        mConfigTable = createConfig(TEST_RESOURCE_ID);
+    }
+
+    @Test
+    public void read_withoutCache_returnNull() {
+        assertThat(mDiskCache.read(application)).isNull();
+    }
+
+    @Test
+    public void write_thenRead_returnSameConfig() {
+        mDiskCache.write(application, mConfigTable);
+
+        PartnerConfigTable result = mDiskCache.read(application);
+        assertThat(PartnerConfigDiskCache.isSameConfig(result, mConfigTable)).isTrue();
+        assertThat(result.getResourceId(PartnerConfig.CONFIG_TOOLBAR_BG_COLOR))
+                .isEqualTo(TEST_RESOURCE_ID);
+    }
+
+    @Test
+    public void read_afterOverlayUpdated_returnNull() {
+        mDiskCache.write(application, mConfigTable);
+
+        PackageInfo updatedPackage = new PackageInfo();
+        updatedPackage.packageName = TEST_PACKAGE_NAME;
+        updatedPackage.lastUpdateTime = 42;
+        shadowOf(application.getPackageManager()).addPackage(updatedPackage);
+
+        assertThat(mDiskCache.read(application)).isNull();
+    }
+
+    @Test
+    public void read_withDifferentRequestedKeys_returnNull() {
+        mDiskCache.write(application, mConfigTable);
+
+        PartnerConfigDiskCache filteredCache = new PartnerConfigDiskCache(
+                application, EnumSet.of(PartnerConfig.CONFIG_TOOLBAR_BG_COLOR));
+        assertThat(filteredCache.read(application)).isNull();
+    }
+
+    @Test
+    public void write_emptyConfig_deleteCache() {
+        mDiskCache.write(application, mConfigTable);
+        mDiskCache.write(application, PartnerConfigTable.EMPTY);
+
+        assertThat(mDiskCache.read(application)).isNull();
+    }
+
+    @Test
+    public void write_concurrently_leavesOneCompleteConfig() throws InterruptedException {
+        PartnerConfigTable other = createConfig(TEST_RESOURCE_ID + 1);
+
+        Thread first = new Thread(() -> mDiskCache.write(application, mConfigTable));
+        Thread second = new Thread(() -> mDiskCache.write(application, other));
+        first.start();
+        second.start();
+        first.join();
+        second.join();
+
+        PartnerConfigTable result = mDiskCache.read(application);
+        assertThat(PartnerConfigDiskCache.isSameConfig(result, mConfigTable)
+                || PartnerConfigDiskCache.isSameConfig(result, other)).isTrue();
+        assertThat(application.getFilesDir().list())
+                .asList().containsExactly(PartnerConfigDiskCache.FILE_NAME);
+    }
+
+    @Test
+    public void isSameConfig_differentResourceId_returnFalse() {
+        PartnerConfigTable other = createConfig(TEST_RESOURCE_ID + 1);
+
+        assertThat(PartnerConfigDiskCache.isSameConfig(mConfigTable, other)).isFalse();
+    }
+
+    @Test
+    public void isSameConfig_nullAndEmpty_returnTrue() {
+        assertThat(PartnerConfigDiskCache.isSameConfig(null, PartnerConfigTable.EMPTY)).isTrue();
+    }
+
+    private static PartnerConfigTable createConfig(int resourceId) {
+        return new PartnerConfigTable.Builder()
+                .put(PartnerConfig.CONFIG_TOOLBAR_BG_COLOR, TEST_PACKAGE_NAME,
+                        PartnerConfigKey.KEY_TOOLBAR_BG_COLOR, resourceId)
+                .build();
+    }
+}
@@ -20,15 +20,29 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.robolectric.RuntimeEnvironment.application;
 
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Bundle;
 
 
+import com.android.car.setupwizardlib.util.TypefaceCache;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 
 /** Unit tests for {@link PartnerConfigHelper}. */
@@ -70,46 +84,329 @@ public class PartnerConfigHelperTest {
     @Test(expected = IllegalArgumentException.class)
     public void getDimension_withWrongConfigType_shouldThrowException() {
         PartnerConfigHelper helper = PartnerConfigHelper.get(application);
-        assertThat(helper.mPartnerResourceCache).doesNotContainKey(TEST_COLOR_RESOURCE_NAME);
+        assertThat(helper.getPartnerResourceCache(TEST_COLOR_RESOURCE_NAME)
+                .contains(TEST_COLOR_RESOURCE_NAME)).isFalse();
         helper.getDimension(application, TEST_COLOR_RESOURCE_NAME);
     }
 
     @Test
     public void getDimension_shouldReturnExpectedDimension() {
         PartnerConfigHelper helper = PartnerConfigHelper.get(application);
-        assertThat(helper.mPartnerResourceCache).doesNotContainKey(TEST_DIMENSION_RESOURCE_NAME);
+        assertThat(helper.getPartnerResourceCache(TEST_DIMENSION_RESOURCE_NAME)
+                .contains(TEST_DIMENSION_RESOURCE_NAME)).isFalse();
 
         float result = helper.getDimension(application, TEST_DIMENSION_RESOURCE_NAME);
         assertThat(result).isEqualTo(EXCEPTED_DIMENSION);
-        assertThat(helper.mPartnerResourceCache).containsKey(TEST_DIMENSION_RESOURCE_NAME);
-        assertThat(helper.mPartnerResourceCache.get(TEST_DIMENSION_RESOURCE_NAME))
+        assertThat(helper.getPartnerResourceCache(TEST_DIMENSION_RESOURCE_NAME)
+                .contains(TEST_DIMENSION_RESOURCE_NAME)).isTrue();
+        assertThat(helper.getPartnerResourceCache(TEST_DIMENSION_RESOURCE_NAME)
+                .getDimension(TEST_DIMENSION_RESOURCE_NAME))
                 .isEqualTo(EXCEPTED_DIMENSION);
     }
 
     @Test
     public void getColor_shouldReturnExpectedColor() {
         PartnerConfigHelper helper = PartnerConfigHelper.get(application);
-        assertThat(helper.mPartnerResourceCache).doesNotContainKey(TEST_COLOR_RESOURCE_NAME);
+        assertThat(helper.getPartnerResourceCache(TEST_COLOR_RESOURCE_NAME)
+                .contains(TEST_COLOR_RESOURCE_NAME)).isFalse();
 
         int result = helper.getColor(application, TEST_COLOR_RESOURCE_NAME);
         assertThat(result).isEqualTo(android.R.color.darker_gray);
-        assertThat(helper.mPartnerResourceCache).containsKey(TEST_COLOR_RESOURCE_NAME);
-        assertThat(helper.mPartnerResourceCache.get(TEST_COLOR_RESOURCE_NAME))
+        assertThat(helper.getPartnerResourceCache(TEST_COLOR_RESOURCE_NAME)
+                .contains(TEST_COLOR_RESOURCE_NAME)).isTrue();
+        assertThat(helper.getPartnerResourceCache(TEST_COLOR_RESOURCE_NAME)
+                .getColor(TEST_COLOR_RESOURCE_NAME))
                 .isEqualTo(android.R.color.darker_gray);
     }
 
     @Test
     public void getString_shouldReturnExpectedString() {
         PartnerConfigHelper helper = PartnerConfigHelper.get(application);
-        assertThat(helper.mPartnerResourceCache).doesNotContainKey(TEST_STRING_RESOURCE_NAME);
+        assertThat(helper.getPartnerResourceCache(TEST_STRING_RESOURCE_NAME)
+                .contains(TEST_STRING_RESOURCE_NAME)).isFalse();
 
         String result = helper.getString(application, TEST_STRING_RESOURCE_NAME);
         assertThat(result).isEqualTo(EXCEPTED_STRING);
-        assertThat(helper.mPartnerResourceCache).containsKey(TEST_STRING_RESOURCE_NAME);
-        assertThat(helper.mPartnerResourceCache.get(TEST_STRING_RESOURCE_NAME))
+        assertThat(helper.getPartnerResourceCache(TEST_STRING_RESOURCE_NAME)
+                .contains(TEST_STRING_RESOURCE_NAME)).isTrue();
+        assertThat(helper.getPartnerResourceCache(TEST_STRING_RESOURCE_NAME)
+                .getObject(TEST_STRING_RESOURCE_NAME))
                 .isEqualTo(EXCEPTED_STRING);
     }
 
+    @Test
+    public void getColor_missingResource_shouldCacheTombstone() {
+        PartnerConfigHelper helper = PartnerConfigHelper.get(application);
+        PartnerConfig missingConfig = PartnerConfig.CONFIG_LAYOUT_BG_COLOR;
+
+        assertThat(helper.getColor(application, missingConfig)).isEqualTo(0);
+        assertThat(helper.getPartnerResourceCache(missingConfig).getState(missingConfig))
+                .isEqualTo(PartnerResourceCache.STATE_MISSING);
+        assertThat(helper.getColor(application, missingConfig)).isEqualTo(0);
+    }
+
+    @Test
+    public void getDimension_missingResource_shouldReturnDefaultFromTombstone() {
+        PartnerConfigHelper helper = PartnerConfigHelper.get(application);
+        PartnerConfig missingConfig = PartnerConfig.CONFIG_TOOLBAR_BUTTON_SPACING;
+
+        assertThat(helper.getDimension(application, missingConfig, 3f)).isEqualTo(3f);
+        assertThat(helper.getPartnerResourceCache(missingConfig).getState(missingConfig))
+                .isEqualTo(PartnerResourceCache.STATE_MISSING);
+        assertThat(helper.getDimension(application, missingConfig, 5f)).isEqualTo(5f);
+    }
+
+    @Test
+    public void getResources_shouldBeCachedUntilPackageReplaced() {
+        PartnerConfigHelper helper = PartnerConfigHelper.get(application);
+        helper.getColor(application, TEST_COLOR_RESOURCE_NAME);
+        helper.getDimension(application, TEST_DIMENSION_RESOURCE_NAME);
+        assertThat(helper.mPackageResources).containsKey(TEST_PACKAGE_NAME);
+
+        Intent intent = new Intent(
+                Intent.ACTION_PACKAGE_REPLACED, Uri.fromParts("package", TEST_PACKAGE_NAME, null));
+        application.sendBroadcast(intent);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertThat(helper.mPackageResources).doesNotContainKey(TEST_PACKAGE_NAME);
+        assertThat(helper.getPartnerResourceCache(TEST_COLOR_RESOURCE_NAME)
+                .contains(TEST_COLOR_RESOURCE_NAME)).isFalse();
+    }
+
+    @Test
+    public void preload_shouldCacheRequestedDrawables() {
+        PartnerConfigHelper helper = PartnerConfigHelper.get(application);
+
+        helper.preload(EnumSet.allOf(PartnerConfig.class));
+
+        assertThat(helper.getPartnerResourceCache(TEST_DRAWABLE_RESOURCE_NAME)
+                .contains(TEST_DRAWABLE_RESOURCE_NAME)).isTrue();
+        assertThat(helper.getPartnerResourceCache(TEST_COLOR_RESOURCE_NAME)
+                .contains(TEST_COLOR_RESOURCE_NAME)).isFalse();
+    }
+
+    @Test
+    public void getSnapshot_afterPreload_shouldReusePreloadedDrawable() {
+        PartnerConfigHelper helper = PartnerConfigHelper.get(application);
+        helper.preload(EnumSet.of(TEST_DRAWABLE_RESOURCE_NAME));
+        Object preloaded = helper.getPartnerResourceCache(TEST_DRAWABLE_RESOURCE_NAME)
+                .getObject(TEST_DRAWABLE_RESOURCE_NAME);
+
+        Drawable drawable =
+                helper.getSnapshot(application).getDrawable(TEST_DRAWABLE_RESOURCE_NAME);
+
+        assertThat(drawable.getConstantState()).isSameInstanceAs(preloaded);
+    }
+
+    @Test
+    public void preload_shouldLoadButtonTypeface() {
+        PartnerConfigHelper helper = PartnerConfigHelper.get(application);
+
+        helper.preload(EnumSet.of(TEST_STRING_RESOURCE_NAME));
+
+        assertThat(TypefaceCache.getIfLoaded(EXCEPTED_STRING, Typeface.NORMAL)).isNotNull();
+    }
+
+    @Test
+    public void getSnapshot_shouldResolveAllConfigs() {
+        PartnerConfigHelper helper = PartnerConfigHelper.get(application);
+
+        PartnerConfigSnapshot snapshot = helper.getSnapshot(application);
+        assertThat(snapshot.getColor(TEST_COLOR_RESOURCE_NAME))
+                .isEqualTo(android.R.color.darker_gray);
+        assertThat(snapshot.getDimension(TEST_DIMENSION_RESOURCE_NAME))
+                .isEqualTo(EXCEPTED_DIMENSION);
+        assertThat(snapshot.getString(TEST_STRING_RESOURCE_NAME)).isEqualTo(EXCEPTED_STRING);
+        assertThat(snapshot.getDrawable(TEST_DRAWABLE_RESOURCE_NAME)).isNotNull();
+        assertThat(snapshot.isPresent(PartnerConfig.CONFIG_LAYOUT_BG_COLOR)).isFalse();
+        assertThat(snapshot.getBoolean(PartnerConfig.CONFIG_IS_IMMERSIVE, true)).isTrue();
+        assertThat(helper.getSnapshot(application)).isSameInstanceAs(snapshot);
+    }
+
+    @Test
+    public void getColor_nightModeSwitchedBack_shouldHitCache() {
+        PartnerConfigHelper helper = PartnerConfigHelper.get(application);
+        helper.getColor(application, TEST_COLOR_RESOURCE_NAME);
+        helper.getString(application, TEST_STRING_RESOURCE_NAME);
+        PartnerResourceCache dayColors = helper.getPartnerResourceCache(TEST_COLOR_RESOURCE_NAME);
+        PartnerResourceCache strings = helper.getPartnerResourceCache(TEST_STRING_RESOURCE_NAME);
+
+        RuntimeEnvironment.setQualifiers("+night");
+        assertThat(helper.getPartnerResourceCache(TEST_COLOR_RESOURCE_NAME))
+                .isNotSameInstanceAs(dayColors);
+        assertThat(helper.getPartnerResourceCache(TEST_STRING_RESOURCE_NAME))
+                .isSameInstanceAs(strings);
+
+        RuntimeEnvironment.setQualifiers("+notnight");
+        assertThat(helper.getPartnerResourceCache(TEST_COLOR_RESOURCE_NAME))
+                .isSameInstanceAs(dayColors);
+        assertThat(dayColors.contains(TEST_COLOR_RESOURCE_NAME)).isTrue();
+    }
+
+    @Test
+    public void getDimension_screenWidthChanged_shouldResolveAgain() {
+        PartnerConfigHelper helper = PartnerConfigHelper.get(application);
+        helper.getDimension(application, TEST_DIMENSION_RESOURCE_NAME);
+        helper.getColor(application, TEST_COLOR_RESOURCE_NAME);
+        PartnerResourceCache dimensions =
+                helper.getPartnerResourceCache(TEST_DIMENSION_RESOURCE_NAME);
+        PartnerResourceCache colors = helper.getPartnerResourceCache(TEST_COLOR_RESOURCE_NAME);
+        PartnerConfigSnapshot snapshot = helper.getSnapshot(application);
+
+        RuntimeEnvironment.setQualifiers("w1280dp");
+        assertThat(helper.getPartnerResourceCache(TEST_DIMENSION_RESOURCE_NAME))
+                .isNotSameInstanceAs(dimensions);
+        assertThat(helper.getPartnerResourceCache(TEST_COLOR_RESOURCE_NAME))
+                .isSameInstanceAs(colors);
+        assertThat(helper.getSnapshot(application)).isNotSameInstanceAs(snapshot);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getSnapshotColor_withWrongConfigType_shouldThrowException() {
+        PartnerConfigHelper.get(application)
+                .getSnapshot(application)
+                .getColor(TEST_DIMENSION_RESOURCE_NAME);
+    }
+
+    @Test
+    public void initAsync_awaitPartnerConfig_shouldResolveConfig() {
+        PartnerConfigHelper helper = PartnerConfigHelper.initAsync(application);
+        assertThat(PartnerConfigHelper.get(application)).isSameInstanceAs(helper);
+
+        assertThat(helper.awaitPartnerConfig(/* timeoutMs= */ 5000)).isTrue();
+        assertThat(helper.isPartnerConfigReady()).isTrue();
+        assertThat(helper.getDeadlineExceededCount()).isEqualTo(0);
+        assertThat(helper.getColor(application, TEST_COLOR_RESOURCE_NAME))
+                .isEqualTo(android.R.color.darker_gray);
+    }
+
+    @Test
+    public void get_synchronous_isReadyWithoutWaiting() {
+        PartnerConfigHelper helper = PartnerConfigHelper.get(application);
+
+        assertThat(helper.awaitPartnerConfig(/* timeoutMs= */ 0)).isTrue();
+        assertThat(helper.getAwaitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void getDrawable_shouldReturnNewInstanceSharingState() {
+        PartnerConfigHelper helper = PartnerConfigHelper.get(application);
+
+        Drawable first = helper.getDrawable(application, TEST_DRAWABLE_RESOURCE_NAME);
+        Drawable second = helper.getDrawable(application, TEST_DRAWABLE_RESOURCE_NAME);
+
+        assertThat(first).isNotNull();
+        assertThat(second).isNotSameInstanceAs(first);
+        assertThat(helper.getPartnerResourceCache(TEST_DRAWABLE_RESOURCE_NAME)
+                .getObject(TEST_DRAWABLE_RESOURCE_NAME))
+                .isInstanceOf(Drawable.ConstantState.class);
+    }
+
+    @Test
+    public void getColor_shouldRecordMetrics() {
+        PartnerConfigHelper helper = PartnerConfigHelper.get(application);
+        PartnerConfig missingConfig = PartnerConfig.CONFIG_LAYOUT_BG_COLOR;
+
+        helper.getColor(application, TEST_COLOR_RESOURCE_NAME);
+        helper.getColor(application, TEST_COLOR_RESOURCE_NAME);
+        helper.getColor(application, missingConfig);
+        helper.getColor(application, missingConfig);
+
+        assertThat(helper.mMetrics.getMissCount(TEST_COLOR_RESOURCE_NAME)).isEqualTo(1);
+        assertThat(helper.mMetrics.getHitCount(TEST_COLOR_RESOURCE_NAME)).isEqualTo(1);
+        assertThat(helper.mMetrics.getNegativeHitCount(missingConfig)).isEqualTo(1);
+
+        StringWriter output = new StringWriter();
+        helper.dump(new PrintWriter(output));
+        assertThat(output.toString()).contains(TEST_COLOR_RESOURCE_NAME.name() + ": 1/1/0");
+        assertThat(output.toString()).contains("ContentResolver#call: count=1");
+    }
+
+    @Test
+    public void getColor_compactConfig_shouldReturnExpectedColor() {
+        FakeOverrideContentProvider fakeOverrideDataProvider =
+                FakeOverrideContentProvider.installEmptyProvider().serveCompactConfig();
+        for (ResourceEntry entry : mResourceEntries) {
+            fakeOverrideDataProvider.injectResourceEntry(entry);
+        }
+        PartnerConfigHelper helper = PartnerConfigHelper.get(application);
+
+        assertThat(helper.getColor(application, TEST_COLOR_RESOURCE_NAME))
+                .isEqualTo(android.R.color.darker_gray);
+        assertThat(helper.mConfigTable.size()).isEqualTo(mResourceEntries.size());
+    }
+
+    @Test
+    public void initAsync_withRequestedConfigs_shouldOnlyReceiveThem() {
+        PartnerConfigHelper helper = PartnerConfigHelper.initAsync(
+                application, EnumSet.of(TEST_COLOR_RESOURCE_NAME));
+        helper.awaitPartnerConfig(/* timeoutMs= */ 1000);
+
+        assertThat(helper.mConfigTable.size()).isEqualTo(1);
+        assertThat(helper.mConfigTable.contains(TEST_COLOR_RESOURCE_NAME)).isTrue();
+        assertThat(helper.getColor(application, TEST_COLOR_RESOURCE_NAME))
+                .isEqualTo(android.R.color.darker_gray);
+        assertThat(helper.getString(application, TEST_STRING_RESOURCE_NAME)).isNull();
+    }
+
+    @Test
+    public void initAsync_providerIgnoresRequestedKeys_shouldDropOtherKeys() {
+        FakeOverrideContentProvider fakeOverrideDataProvider =
+                FakeOverrideContentProvider.installEmptyProvider().ignoreRequestedKeys();
+        for (ResourceEntry entry : mResourceEntries) {
+            fakeOverrideDataProvider.injectResourceEntry(entry);
+        }
+
+        PartnerConfigHelper helper = PartnerConfigHelper.initAsync(
+                application, EnumSet.of(TEST_COLOR_RESOURCE_NAME));
+        helper.awaitPartnerConfig(/* timeoutMs= */ 1000);
+
+        assertThat(helper.mConfigTable.size()).isEqualTo(1);
+        assertThat(helper.getString(application, TEST_STRING_RESOURCE_NAME)).isNull();
+    }
+
+    @Test
+    public void initAsync_emptyRequestedConfigs_shouldReceiveNothing() {
+        PartnerConfigHelper helper =
+                PartnerConfigHelper.initAsync(application, new HashSet<>());
+        helper.awaitPartnerConfig(/* timeoutMs= */ 1000);
+
+        assertThat(helper.mConfigTable.size()).isEqualTo(0);
+        assertThat(helper.getString(application, TEST_STRING_RESOURCE_NAME)).isNull();
+    }
+
+    @Test
+    public void getChangedConfigs_shouldReturnOnlyChangedKeys() {
+        Bundle oldBundle = new Bundle();
+        Bundle newBundle = new Bundle();
+        ResourceEntry colorEntry = new ResourceEntry(TEST_PACKAGE_NAME,
+                TEST_COLOR_RESOURCE_NAME.getResourceName(), /* resourceId= */ 1);
+        oldBundle.putBundle(colorEntry.getResourceName(), colorEntry.toBundle());
+        newBundle.putBundle(colorEntry.getResourceName(), colorEntry.toBundle());
+        ResourceEntry stringEntry = new ResourceEntry("other.packageName",
+                TEST_STRING_RESOURCE_NAME.getResourceName(), /* resourceId= */ 2);
+        newBundle.putBundle(stringEntry.getResourceName(), stringEntry.toBundle());
+
+        assertThat(PartnerConfigHelper.getChangedConfigs(
+                PartnerConfigTable.fromBundle(oldBundle), PartnerConfigTable.fromBundle(newBundle),
+                Collections.emptySet()))
+                .containsExactly(TEST_STRING_RESOURCE_NAME);
+    }
+
+    @Test
+    public void getChangedConfigs_packageUpdated_shouldIncludeItsKeys() {
+        Bundle bundle = new Bundle();
+        ResourceEntry colorEntry = new ResourceEntry(TEST_PACKAGE_NAME,
+                TEST_COLOR_RESOURCE_NAME.getResourceName(), /* resourceId= */ 1);
+        bundle.putBundle(colorEntry.getResourceName(), colorEntry.toBundle());
+
+        PartnerConfigTable configTable = PartnerConfigTable.fromBundle(bundle);
+
+        assertThat(PartnerConfigHelper.getChangedConfigs(
+                configTable, configTable, Collections.singleton(TEST_PACKAGE_NAME)))
+                .containsExactly(TEST_COLOR_RESOURCE_NAME);
+    }
+
     private List<ResourceEntry> prepareFakeData() {
         ExternalResources.Resources testResources =
                 ExternalResources.injectExternalResources(TEST_PACKAGE_NAME);
@@ -119,6 +416,11 @@ public class PartnerConfigHelperTest {
         testResources
                 .putDimension(TEST_DIMENSION_RESOURCE_NAME.getResourceName(), EXCEPTED_DIMENSION);
         testResources.putText(TEST_STRING_RESOURCE_NAME.getResourceName(), EXCEPTED_STRING);
+        // The color has a night variant and the dimension has screen width variants.
+        testResources.putChangingConfigurations(TEST_COLOR_RESOURCE_NAME.getResourceName(),
+                /* defaultType= */ "color", ActivityInfo.CONFIG_UI_MODE);
+        testResources.putChangingConfigurations(TEST_DIMENSION_RESOURCE_NAME.getResourceName(),
+                /* defaultType= */ "dimen", ActivityInfo.CONFIG_SCREEN_SIZE);
 
         mExpectedDrawable =
                 application
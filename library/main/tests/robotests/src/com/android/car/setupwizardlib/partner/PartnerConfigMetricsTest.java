@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/** Unit tests for {@link PartnerConfigMetrics}. */
+@RunWith(RobolectricTestRunner.class)
+public final class PartnerConfigMetricsTest {
+
+    @Test
+    public void latencyHistogram_shouldBucketByPowerOfTwoMicros() {
+        PartnerConfigMetrics.LatencyHistogram histogram =
+                new PartnerConfigMetrics.LatencyHistogram();
+
+        histogram.record(/* nanos= */ 500);
+        histogram.record(/* nanos= */ 3_000);
+        histogram.record(/* nanos= */ 3_500);
+        histogram.record(/* nanos= */ 10_000_000_000L);
+
+        StringWriter output = new StringWriter();
+        histogram.dump(new PrintWriter(output, /* autoFlush= */ true), "", "test");
+        assertThat(histogram.getCount()).isEqualTo(4);
+        assertThat(output.toString()).contains("max=10000000us");
+        assertThat(output.toString()).contains("<1us:1 <4us:2 >=1048576us:1");
+    }
+
+    @Test
+    public void dump_withoutLookups_shouldOnlyListHistograms() {
+        PartnerConfigMetrics metrics = new PartnerConfigMetrics();
+
+        StringWriter output = new StringWriter();
+        metrics.dump(new PrintWriter(output, /* autoFlush= */ true), "");
+        assertThat(output.toString()).doesNotContain("CONFIG_");
+        assertThat(output.toString()).contains("ContentResolver#call: no samples");
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.Bundle;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+/** Unit tests for {@link PartnerConfigProtocol}. */
+@RunWith(RobolectricTestRunner.class)
+public final class PartnerConfigProtocolTest {
+    private static final String TEST_PACKAGE_NAME = "test.packageName";
+    /** The string count follows the magic and the format version. */
+    private static final int STRING_COUNT_OFFSET = 8;
+
+    @Test
+    public void encode_thenDecode_returnSameConfig() {
+        Bundle resultBundle = new Bundle();
+        putEntry(resultBundle, PartnerConfigKey.KEY_TOOLBAR_BG_COLOR, /* resourceId= */ 1);
+        putEntry(resultBundle, PartnerConfigKey.KEY_LAYOUT_BG_COLOR, /* resourceId= */ 2);
+
+        PartnerConfigTable decoded = PartnerConfigProtocol.decode(
+                ByteBuffer.wrap(PartnerConfigProtocol.encode(resultBundle)));
+
+        assertThat(decoded).isEqualTo(PartnerConfigTable.fromBundle(resultBundle));
+        assertThat(decoded.getResourceId(PartnerConfig.CONFIG_LAYOUT_BG_COLOR)).isEqualTo(2);
+    }
+
+    @Test
+    public void decode_unknownKey_skipIt() {
+        Bundle resultBundle = new Bundle();
+        putEntry(resultBundle, PartnerConfigKey.KEY_TOOLBAR_BG_COLOR, /* resourceId= */ 1);
+        putEntry(resultBundle, "unknownKey", /* resourceId= */ 2);
+
+        PartnerConfigTable decoded = PartnerConfigProtocol.decode(
+                ByteBuffer.wrap(PartnerConfigProtocol.encode(resultBundle)));
+
+        assertThat(decoded.size()).isEqualTo(1);
+        assertThat(decoded.contains(PartnerConfig.CONFIG_TOOLBAR_BG_COLOR)).isTrue();
+    }
+
+    @Test
+    public void createRequestExtras_someConfigs_onlyThoseRequested() {
+        Bundle extras = PartnerConfigProtocol.createRequestExtras(
+                EnumSet.of(PartnerConfig.CONFIG_TOOLBAR_BG_COLOR));
+
+        assertThat(PartnerConfigProtocol.isKeyRequested(
+                extras, PartnerConfigKey.KEY_TOOLBAR_BG_COLOR)).isTrue();
+        assertThat(PartnerConfigProtocol.isKeyRequested(
+                extras, PartnerConfigKey.KEY_LAYOUT_BG_COLOR)).isFalse();
+    }
+
+    @Test
+    public void createRequestExtras_allConfigs_everyKeyRequested() {
+        Bundle extras = PartnerConfigProtocol.createRequestExtras(
+                EnumSet.allOf(PartnerConfig.class));
+
+        assertThat(extras.containsKey(PartnerConfigProtocol.EXTRA_REQUESTED_KEYS)).isFalse();
+        assertThat(PartnerConfigProtocol.isKeyRequested(
+                extras, PartnerConfigKey.KEY_LAYOUT_BG_COLOR)).isTrue();
+        assertThat(PartnerConfigProtocol.isKeyRequested(
+                /* extras= */ null, PartnerConfigKey.KEY_LAYOUT_BG_COLOR)).isTrue();
+    }
+
+    @Test
+    public void decode_truncated_returnNull() {
+        Bundle resultBundle = new Bundle();
+        putEntry(resultBundle, PartnerConfigKey.KEY_TOOLBAR_BG_COLOR, /* resourceId= */ 1);
+        byte[] encoded = PartnerConfigProtocol.encode(resultBundle);
+
+        assertThat(PartnerConfigProtocol.decode(
+                ByteBuffer.wrap(Arrays.copyOf(encoded, encoded.length - 1)))).isNull();
+    }
+
+    @Test
+    public void decode_negativeStringCount_returnNull() {
+        assertThat(PartnerConfigProtocol.decode(
+                withInt(encodeOneEntry(), STRING_COUNT_OFFSET, -1))).isNull();
+    }
+
+    @Test
+    public void decode_stringCountPastBuffer_returnNull() {
+        assertThat(PartnerConfigProtocol.decode(
+                withInt(encodeOneEntry(), STRING_COUNT_OFFSET, Integer.MAX_VALUE))).isNull();
+    }
+
+    @Test
+    public void decode_stringIndexOutOfRange_returnNull() {
+        byte[] encoded = encodeOneEntry();
+
+        // The resource name index of the only entry, before its resource id.
+        assertThat(PartnerConfigProtocol.decode(
+                withInt(encoded, encoded.length - 8, /* value= */ 99))).isNull();
+        assertThat(PartnerConfigProtocol.decode(
+                withInt(encoded, encoded.length - 8, /* value= */ -1))).isNull();
+    }
+
+    @Test
+    public void readCompactConfig_legacyReply_returnNull() {
+        Bundle reply = new Bundle();
+        putEntry(reply, PartnerConfigKey.KEY_TOOLBAR_BG_COLOR, /* resourceId= */ 1);
+
+        assertThat(PartnerConfigProtocol.readCompactConfig(reply)).isNull();
+        assertThat(reply.size()).isEqualTo(1);
+    }
+
+    private static byte[] encodeOneEntry() {
+        Bundle resultBundle = new Bundle();
+        putEntry(resultBundle, PartnerConfigKey.KEY_TOOLBAR_BG_COLOR, /* resourceId= */ 1);
+        return PartnerConfigProtocol.encode(resultBundle);
+    }
+
+    private static ByteBuffer withInt(byte[] encoded, int offset, int value) {
+        ByteBuffer buffer = ByteBuffer.wrap(encoded.clone());
+        buffer.putInt(offset, value);
+        return buffer;
+    }
+
+    private static void putEntry(Bundle bundle, String key, int resourceId) {
+        ResourceEntry entry = new ResourceEntry(TEST_PACKAGE_NAME, key, resourceId);
+        bundle.putBundle(key, entry.toBundle());
+    }
+}
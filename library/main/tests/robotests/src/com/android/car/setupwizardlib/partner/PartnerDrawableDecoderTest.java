@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link PartnerDrawableDecoder}. */
+@RunWith(RobolectricTestRunner.class)
+public class PartnerDrawableDecoderTest {
+
+    @Test
+    public void getScale_fits_returnOne() {
+        assertThat(PartnerDrawableDecoder.getScale(
+                /* width= */ 40, /* height= */ 40, /* maxWidth= */ 48, /* maxHeight= */ 48))
+                .isEqualTo(1f);
+    }
+
+    @Test
+    public void getScale_tooLarge_fitTightestBound() {
+        assertThat(PartnerDrawableDecoder.getScale(
+                /* width= */ 400, /* height= */ 200, /* maxWidth= */ 100, /* maxHeight= */ 100))
+                .isEqualTo(0.25f);
+    }
+
+    @Test
+    public void getScale_unboundedWidth_onlyFitHeight() {
+        assertThat(PartnerDrawableDecoder.getScale(
+                /* width= */ 1000, /* height= */ 200, PartnerDrawableDecoder.UNBOUNDED,
+                /* maxHeight= */ 100))
+                .isEqualTo(0.5f);
+    }
+
+    @Test
+    public void getSampleSize_shouldNotScaleBelowTarget() {
+        assertThat(PartnerDrawableDecoder.getSampleSize(1f)).isEqualTo(1);
+        assertThat(PartnerDrawableDecoder.getSampleSize(0.5f)).isEqualTo(2);
+        assertThat(PartnerDrawableDecoder.getSampleSize(0.3f)).isEqualTo(2);
+        assertThat(PartnerDrawableDecoder.getSampleSize(0.25f)).isEqualTo(4);
+    }
+}
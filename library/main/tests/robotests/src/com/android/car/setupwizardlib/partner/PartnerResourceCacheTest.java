@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** Unit tests for {@link PartnerResourceCache}. */
+@RunWith(RobolectricTestRunner.class)
+public final class PartnerResourceCacheTest {
+
+    @Test
+    public void emptyCache_containsNothing() {
+        PartnerResourceCache cache = new PartnerResourceCache();
+
+        for (PartnerConfig partnerConfig : PartnerConfig.values()) {
+            assertThat(cache.contains(partnerConfig)).isFalse();
+        }
+    }
+
+    @Test
+    public void put_thenGet_returnSameValue() {
+        PartnerResourceCache cache = new PartnerResourceCache();
+
+        cache.putColor(PartnerConfig.CONFIG_TOOLBAR_BG_COLOR, 0xff112233);
+        cache.putDimension(PartnerConfig.CONFIG_TOOLBAR_BUTTON_RADIUS, 12.5f);
+        cache.putBoolean(PartnerConfig.CONFIG_IS_IMMERSIVE, false);
+        cache.putObject(PartnerConfig.CONFIG_TOOLBAR_BUTTON_FONT_FAMILY, "font");
+
+        assertThat(cache.getColor(PartnerConfig.CONFIG_TOOLBAR_BG_COLOR)).isEqualTo(0xff112233);
+        assertThat(cache.getDimension(PartnerConfig.CONFIG_TOOLBAR_BUTTON_RADIUS))
+                .isEqualTo(12.5f);
+        assertThat(cache.contains(PartnerConfig.CONFIG_IS_IMMERSIVE)).isTrue();
+        assertThat(cache.getBoolean(PartnerConfig.CONFIG_IS_IMMERSIVE)).isFalse();
+        assertThat(cache.getObject(PartnerConfig.CONFIG_TOOLBAR_BUTTON_FONT_FAMILY))
+                .isEqualTo("font");
+        assertThat(cache.contains(PartnerConfig.CONFIG_LAYOUT_BG_COLOR)).isFalse();
+    }
+
+    @Test
+    public void putObjectIfAbsent_alreadyCached_returnFirstValue() {
+        PartnerResourceCache cache = new PartnerResourceCache();
+        PartnerConfig partnerConfig = PartnerConfig.CONFIG_TOOLBAR_BUTTON_ICON_BACK;
+
+        assertThat(cache.putObjectIfAbsent(partnerConfig, "first")).isEqualTo("first");
+        assertThat(cache.putObjectIfAbsent(partnerConfig, "second")).isEqualTo("first");
+        assertThat(cache.getObject(partnerConfig)).isEqualTo("first");
+        assertThat(cache.contains(partnerConfig)).isTrue();
+    }
+
+    @Test
+    public void putBoolean_overwrite_keepOtherBits() {
+        PartnerResourceCache cache = new PartnerResourceCache();
+
+        cache.putBoolean(PartnerConfig.CONFIG_IS_IMMERSIVE, true);
+        cache.putBoolean(PartnerConfig.CONFIG_IS_IMMERSIVE, false);
+        cache.putBoolean(PartnerConfig.CONFIG_IS_IMMERSIVE, true);
+
+        assertThat(cache.getBoolean(PartnerConfig.CONFIG_IS_IMMERSIVE)).isTrue();
+    }
+
+    @Test
+    public void concurrentReaders_observePublishedValue() throws InterruptedException {
+        PartnerResourceCache cache = new PartnerResourceCache();
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean mismatch = new AtomicBoolean();
+
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (!cache.contains(PartnerConfig.CONFIG_TOOLBAR_BUTTON_TEXT_SIZE)) {
+                    Thread.yield();
+                }
+                if (cache.getDimension(PartnerConfig.CONFIG_TOOLBAR_BUTTON_TEXT_SIZE) != 28f) {
+                    mismatch.set(true);
+                }
+            });
+            readers[i].start();
+        }
+
+        start.countDown();
+        cache.putDimension(PartnerConfig.CONFIG_TOOLBAR_BUTTON_TEXT_SIZE, 28f);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertThat(mismatch.get()).isFalse();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.partner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.RuntimeEnvironment.application;
+
+import android.content.pm.ActivityInfo;
+import android.content.res.Configuration;
+import android.os.Bundle;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** Unit tests for {@link SharedPartnerValues}. */
+@RunWith(RobolectricTestRunner.class)
+public class SharedPartnerValuesTest {
+
+    private static final String TEST_PACKAGE_NAME = "test.packageName";
+
+    private static final PartnerConfig TEST_COLOR_RESOURCE_NAME =
+            PartnerConfig.CONFIG_TOOLBAR_BG_COLOR;
+
+    private static final PartnerConfig TEST_DIMENSION_RESOURCE_NAME =
+            PartnerConfig.CONFIG_TOOLBAR_BUTTON_RADIUS;
+
+    private static final PartnerConfig TEST_STRING_RESOURCE_NAME =
+            PartnerConfig.CONFIG_TOOLBAR_BUTTON_FONT_FAMILY;
+
+    private static final float EXCEPTED_DIMENSION = 10;
+
+    private final Bundle mResultBundle = new Bundle();
+
+    @Before
+    public void setUp() {
+        ExternalResources.Resources testResources =
+                ExternalResources.injectExternalResources(TEST_PACKAGE_NAME);
+        testResources.putColor(
+                TEST_COLOR_RESOURCE_NAME.getResourceName(), android.R.color.darker_gray);
+        testResources.putDimension(
+                TEST_DIMENSION_RESOURCE_NAME.getResourceName(), EXCEPTED_DIMENSION);
+        testResources.putText(TEST_STRING_RESOURCE_NAME.getResourceName(), "myFont");
+        // The color has a night variant.
+        testResources.putChangingConfigurations(
+                TEST_COLOR_RESOURCE_NAME.getResourceName(), "color", ActivityInfo.CONFIG_UI_MODE);
+
+        for (ResourceEntry entry : Arrays.asList(
+                createEntry(testResources, TEST_COLOR_RESOURCE_NAME, "color"),
+                createEntry(testResources, TEST_DIMENSION_RESOURCE_NAME, "dimen"),
+                createEntry(testResources, TEST_STRING_RESOURCE_NAME, "string"))) {
+            mResultBundle.putBundle(entry.getResourceName(), entry.toBundle());
+        }
+    }
+
+    @Test
+    public void encode_thenRead_returnResolvedValues() {
+        SharedPartnerValues sharedValues = SharedPartnerValues.read(
+                ByteBuffer.wrap(SharedPartnerValues.encode(application, mResultBundle)));
+        Configuration config = application.getResources().getConfiguration();
+
+        assertThat(sharedValues.contains(TEST_COLOR_RESOURCE_NAME, config)).isTrue();
+        assertThat(sharedValues.getColor(TEST_COLOR_RESOURCE_NAME))
+                .isEqualTo(android.R.color.darker_gray);
+        assertThat(sharedValues.contains(TEST_DIMENSION_RESOURCE_NAME, config)).isTrue();
+        assertThat(sharedValues.getDimension(TEST_DIMENSION_RESOURCE_NAME))
+                .isEqualTo(EXCEPTED_DIMENSION);
+        // Strings aren't shared.
+        assertThat(sharedValues.contains(TEST_STRING_RESOURCE_NAME, config)).isFalse();
+    }
+
+    @Test
+    public void contains_otherNightMode_onlyDimensionsStillValid() {
+        SharedPartnerValues sharedValues = SharedPartnerValues.read(
+                ByteBuffer.wrap(SharedPartnerValues.encode(application, mResultBundle)));
+        Configuration config =
+                new Configuration(application.getResources().getConfiguration());
+        config.uiMode ^= Configuration.UI_MODE_NIGHT_YES | Configuration.UI_MODE_NIGHT_NO;
+
+        assertThat(sharedValues.contains(TEST_COLOR_RESOURCE_NAME, config)).isFalse();
+        assertThat(sharedValues.contains(TEST_DIMENSION_RESOURCE_NAME, config)).isTrue();
+    }
+
+    @Test
+    public void contains_otherOrientation_stillValid() {
+        SharedPartnerValues sharedValues = SharedPartnerValues.read(
+                ByteBuffer.wrap(SharedPartnerValues.encode(application, mResultBundle)));
+        Configuration config =
+                new Configuration(application.getResources().getConfiguration());
+        config.orientation = config.orientation == Configuration.ORIENTATION_LANDSCAPE
+                ? Configuration.ORIENTATION_PORTRAIT
+                : Configuration.ORIENTATION_LANDSCAPE;
+
+        assertThat(sharedValues.contains(TEST_COLOR_RESOURCE_NAME, config)).isTrue();
+        assertThat(sharedValues.contains(TEST_DIMENSION_RESOURCE_NAME, config)).isTrue();
+    }
+
+    @Test
+    public void read_truncated_returnNull() {
+        byte[] bytes = SharedPartnerValues.encode(application, mResultBundle);
+
+        assertThat(SharedPartnerValues.read(ByteBuffer.wrap(bytes, 0, bytes.length - 2)))
+                .isNull();
+    }
+
+    @Test
+    public void getColor_withSharedValues_shouldNotResolveResources() {
+        FakeOverrideContentProvider.installEmptyProvider();
+        PartnerConfigHelper helper = PartnerConfigHelper.get(application);
+        helper.mSharedValues = SharedPartnerValues.read(
+                ByteBuffer.wrap(SharedPartnerValues.encode(application, mResultBundle)));
+
+        assertThat(helper.getColor(application, TEST_COLOR_RESOURCE_NAME))
+                .isEqualTo(android.R.color.darker_gray);
+        assertThat(helper.mPackageResources).isEmpty();
+    }
+
+    private static ResourceEntry createEntry(
+            ExternalResources.Resources testResources, PartnerConfig partnerConfig,
+            String defType) {
+        return new ResourceEntry(
+                TEST_PACKAGE_NAME,
+                partnerConfig.getResourceName(),
+                testResources.getIdentifier(
+                        partnerConfig.getResourceName(), defType, TEST_PACKAGE_NAME));
+    }
+}
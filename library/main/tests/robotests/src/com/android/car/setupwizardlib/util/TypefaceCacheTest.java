@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.setupwizardlib.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.graphics.Typeface;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link TypefaceCache}. */
+@RunWith(RobolectricTestRunner.class)
+public class TypefaceCacheTest {
+
+    private static final String TEST_FONT_FAMILY = "sans-serif-medium";
+
+    @Before
+    public void setUp() {
+        TypefaceCache.clearForTesting();
+    }
+
+    @Test
+    public void getIfLoaded_notLoaded_returnNull() {
+        assertThat(TypefaceCache.getIfLoaded(TEST_FONT_FAMILY, Typeface.NORMAL)).isNull();
+    }
+
+    @Test
+    public void get_shouldCachePerStyle() {
+        Typeface normal = TypefaceCache.get(TEST_FONT_FAMILY, Typeface.NORMAL);
+
+        assertThat(TypefaceCache.getIfLoaded(TEST_FONT_FAMILY, Typeface.NORMAL))
+                .isSameInstanceAs(normal);
+        assertThat(TypefaceCache.getIfLoaded(TEST_FONT_FAMILY, Typeface.BOLD)).isNull();
+    }
+
+    @Test
+    public void getAsync_loaded_callbackImmediately() {
+        Typeface normal = TypefaceCache.get(TEST_FONT_FAMILY, Typeface.NORMAL);
+        Typeface[] result = new Typeface[1];
+
+        TypefaceCache.getAsync(TEST_FONT_FAMILY, Typeface.NORMAL, typeface -> result[0] = typeface);
+
+        assertThat(result[0]).isSameInstanceAs(normal);
+    }
+
+    @Test
+    public void getAsync_notLoaded_shouldNotLoadOnCallerThread() {
+        Typeface[] result = new Typeface[1];
+
+        TypefaceCache.getAsync(TEST_FONT_FAMILY, Typeface.NORMAL, typeface -> result[0] = typeface);
+
+        // The callback is posted to the main thread once the background load is done.
+        assertThat(result[0]).isNull();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getIfLoaded_unknownStyle_shouldThrowException() {
+        TypefaceCache.getIfLoaded(TEST_FONT_FAMILY, /* style= */ 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void get_negativeStyle_shouldThrowException() {
+        TypefaceCache.get(TEST_FONT_FAMILY, /* style= */ -1);
+    }
+}